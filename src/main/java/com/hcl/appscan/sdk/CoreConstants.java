@@ -46,6 +46,7 @@ public interface CoreConstants {
 	String API_KEY_LOGIN				= API_ENV + "/Account/ApiKeyLogin";						//$NON-NLS-1$
 	String API_LOGOUT					= API_ENV + "/Account/Logout";							//$NON-NLS-1$
 	String API_APPS						= API_ENV + "/Apps"; 									//$NON-NLS-1$
+	String API_APPS_ID					= API_ENV + "/Apps/%s";								//$NON-NLS-1$
 	String API_PRESENCES				= API_ENV + "/Presences";								//$NON-NLS-1$
 	String API_PRESENCES_ID				= API_ENV + "/Presences/%s";							//$NON-NLS-1$
 	String API_PRESENCES_NEW_KEY		= API_ENV + "/Presences/%s/NewKey";						//$NON-NLS-1$
@@ -56,6 +57,7 @@ public interface CoreConstants {
 	String API_SCANNER					= API_ENV + "/Scans/%s";								//$NON-NLS-1$
 	String API_SCANS					= API_ENV + "/Scans";									//$NON-NLS-1$
 	String API_SCANS_REPORT				= API_ENV + "/Scans/%s/Report/%s";						//$NON-NLS-1$
+	String API_ISSUES_SCAN				= API_ENV + "/Issues/Scan/%s";							//$NON-NLS-1$
 	String API_SCX						= "SCX";												//$NON-NLS-1$
 	String API_SACLIENT_DOWNLOAD		= "/api/%s/StaticAnalyzer/SAClientUtil?os=%s"; 			//$NON-NLS-1$
 	String API_SACLIENT_VERSION			= "/api/%s/StaticAnalyzer/SAClientUtil?os=%s&meta=%s"; 	//$NON-NLS-1$
@@ -63,6 +65,7 @@ public interface CoreConstants {
 	
 	String DEFAULT_RESULT_NAME			= "asoc_results";										//$NON-NLS-1$
 	String SACLIENT_INSTALL_DIR			= "SAClientInstall";									//$NON-NLS-1$
+	String CHUNKED_UPLOAD_URL			= "ChunkedUploadUrl";									//$NON-NLS-1$
 	
 	String RUNNING						= "Running";											//$NON-NLS-1$
 	String READY						= "Ready";												//$NON-NLS-1$
@@ -0,0 +1,157 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.app;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wink.json4j.JSONException;
+import org.apache.wink.json4j.JSONObject;
+
+import com.hcl.appscan.sdk.CoreConstants;
+import com.hcl.appscan.sdk.auth.IAuthenticationProvider;
+import com.hcl.appscan.sdk.http.HttpClient;
+import com.hcl.appscan.sdk.http.HttpResponse;
+import com.hcl.appscan.sdk.utils.FileCache;
+
+/**
+ * Remembers which applications exist, shared by every provider in the JVM. Applications are indexed per server
+ * and token, since different users can see different applications. Tokens are only held as hashes, and the
+ * applications of a token that has not been used for a time to live are dropped.
+ * <p>
+ * The index is filled whenever an application list is loaded. An id that is not in the index is looked up on its
+ * own, rather than by reloading the whole list. Entries expire after a time to live, in seconds, that can be set
+ * with the "ApplicationIndexTTL" system property.
+ */
+public final class ApplicationIndex implements CoreConstants {
+
+	private static final String TTL_PROPERTY = "ApplicationIndexTTL"; //$NON-NLS-1$
+	private static final long DEFAULT_TTL = 600;
+	private static final long TTL = Long.getLong(TTL_PROPERTY, DEFAULT_TTL) * 1000;
+	private static final String AUTHORIZATION = "Authorization"; //$NON-NLS-1$
+
+	private static final ConcurrentHashMap<String, Applications> INDEX = new ConcurrentHashMap<String, Applications>();
+
+	private ApplicationIndex() {
+	}
+
+	/**
+	 * Checks whether an application exists.
+	 *
+	 * @param provider The {@link IAuthenticationProvider} of the user.
+	 * @param client The {@link HttpClient} used to look the application up if it is not indexed.
+	 * @param appId The id of the application.
+	 * @return True if the application exists and the user can access it.
+	 */
+	public static boolean contains(IAuthenticationProvider provider, HttpClient client, String appId) {
+		Map<String, Entry> applications = getApplications(provider);
+		Entry entry = applications.get(appId);
+		if(entry != null && entry.isValid())
+			return true;
+
+		String name = lookup(provider, client, appId);
+		if(name == null) {
+			applications.remove(appId);
+			return false;
+		}
+		applications.put(appId, new Entry(name));
+		return true;
+	}
+
+	/**
+	 * Gets the name of an indexed application.
+	 *
+	 * @param provider The {@link IAuthenticationProvider} of the user.
+	 * @param appId The id of the application.
+	 * @return The name, or null if the application is not indexed.
+	 */
+	public static String getName(IAuthenticationProvider provider, String appId) {
+		Entry entry = getApplications(provider).get(appId);
+		return entry != null && entry.isValid() ? entry.m_name : null;
+	}
+
+	/**
+	 * Adds a list of applications to the index.
+	 *
+	 * @param provider The {@link IAuthenticationProvider} of the user the list was loaded for.
+	 * @param applications The applications, mapping ids to names.
+	 */
+	public static void addAll(IAuthenticationProvider provider, Map<String, String> applications) {
+		Map<String, Entry> index = getApplications(provider);
+		for(Map.Entry<String, String> application : applications.entrySet())
+			index.put(application.getKey(), new Entry(application.getValue()));
+	}
+
+	/**
+	 * Removes all indexed applications.
+	 */
+	public static void clear() {
+		INDEX.clear();
+	}
+
+	private static String lookup(IAuthenticationProvider provider, HttpClient client, String appId) {
+		if(provider.isTokenExpired())
+			return null;
+
+		Map<String, String> headers = provider.getAuthorizationHeader(true);
+		try {
+			String url = provider.getServer() + String.format(API_APPS_ID, URLEncoder.encode(appId, "UTF-8").replace("+", "%20")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			HttpResponse response = client.get(url, headers, null);
+			if(!response.isSuccess()) {
+				response.close();
+				return null;
+			}
+			JSONObject application = (JSONObject) response.getResponseBodyAsJSON();
+			return application == null ? null : application.optString(NAME, appId);
+		} catch (IOException | JSONException | ClassCastException e) {
+			return null;
+		}
+	}
+
+	private static Map<String, Entry> getApplications(IAuthenticationProvider provider) {
+		Map<String, String> headers = provider.getAuthorizationHeader(false);
+		String key = FileCache.hash(provider.getServer() + '|' + (headers == null ? null : headers.get(AUTHORIZATION)));
+		Applications applications = INDEX.get(key);
+		if(applications == null) {
+			// A new token, most likely because an earlier one was rotated.
+			evictUnused();
+			Applications existing = INDEX.putIfAbsent(key, applications = new Applications());
+			if(existing != null)
+				applications = existing;
+		}
+		applications.m_used = System.currentTimeMillis();
+		return applications.m_entries;
+	}
+
+	private static void evictUnused() {
+		long now = System.currentTimeMillis();
+		for(Iterator<Applications> applications = INDEX.values().iterator(); applications.hasNext();) {
+			if(now - applications.next().m_used >= TTL)
+				applications.remove();
+		}
+	}
+
+	private static class Applications {
+		private final Map<String, Entry> m_entries = new ConcurrentHashMap<String, Entry>();
+		private volatile long m_used = System.currentTimeMillis();
+	}
+
+	private static class Entry {
+		private final String m_name;
+		private final long m_added = System.currentTimeMillis();
+
+		Entry(String name) {
+			m_name = name == null ? "" : name; //$NON-NLS-1$
+		}
+
+		boolean isValid() {
+			return System.currentTimeMillis() - m_added < TTL;
+		}
+	}
+}
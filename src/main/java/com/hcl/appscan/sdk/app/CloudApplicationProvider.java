@@ -7,26 +7,34 @@
 package com.hcl.appscan.sdk.app;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.wink.json4j.JSONArray;
 import org.apache.wink.json4j.JSONException;
-import org.apache.wink.json4j.JSONObject;
 
 import com.hcl.appscan.sdk.CoreConstants;
 import com.hcl.appscan.sdk.auth.IAuthenticationProvider;
 import com.hcl.appscan.sdk.http.HttpClient;
-import com.hcl.appscan.sdk.http.HttpResponse;
+import com.hcl.appscan.sdk.http.JSONReader;
+import com.hcl.appscan.sdk.http.PagedCollection;
+import com.hcl.appscan.sdk.http.PagedCollection.IElementReader;
+import com.hcl.appscan.sdk.http.PagedCollection.IPageIterator;
+import com.hcl.appscan.sdk.http.PagedCollection.PageException;
 
 public class CloudApplicationProvider implements IApplicationProvider, CoreConstants {
 
 	private Map<String, String> m_applications;
 	private IAuthenticationProvider m_authProvider;
+	private HttpClient m_client;
 	
 	public CloudApplicationProvider(IAuthenticationProvider provider) {
+		this(provider, HttpClient.getDefault());
+	}
+	
+	public CloudApplicationProvider(IAuthenticationProvider provider, HttpClient client) {
 		m_authProvider = provider;
+		m_client = client;
 	}
 	
 	@Override
@@ -36,6 +44,23 @@ public class CloudApplicationProvider implements IApplicationProvider, CoreConst
 		return m_applications;
 	}
 
+	/**
+	 * Iterates over the available applications, reading them from the service one page at a time so that
+	 * the first ones are available before the whole list has been transferred. An iterator that is not read
+	 * to the end should be closed.
+	 * @return The applications, as entries of application id and name.
+	 */
+	public PagedCollection<Map.Entry<String, String>> iterateApplications() {
+		String url =  m_authProvider.getServer() + API_APPS + "?fields=Name&sort=%2BName"; //$NON-NLS-1$
+		return new PagedCollection<Map.Entry<String, String>>(m_client, m_authProvider, url, PagedCollection.DEFAULT_PAGE_SIZE,
+				new IElementReader<Map.Entry<String, String>>() {
+			@Override
+			public Map.Entry<String, String> read(JSONReader reader) throws IOException, JSONException {
+				return readApplication(reader);
+			}
+		});
+	}
+
 	@Override
 	public String getAppName(String id) {
 		return getApplications().get(id);
@@ -45,32 +70,40 @@ public class CloudApplicationProvider implements IApplicationProvider, CoreConst
 		if(m_authProvider.isTokenExpired())
 			return;
 		
-		m_applications = new HashMap<String, String>();
-		String url =  m_authProvider.getServer() + API_APPS + "?fields=Name&sort=%2BName"; //$NON-NLS-1$
-		Map<String, String> headers = m_authProvider.getAuthorizationHeader(true);
-		headers.putAll(Collections.singletonMap("range", "items=0-999999")); //$NON-NLS-1$ //$NON-NLS-2$
-		
-		HttpClient client = new HttpClient();
-		
+		Map<String, String> applications = new HashMap<String, String>();
+		IPageIterator<Map.Entry<String, String>> iterator = iterateApplications().iterator();
 		try {
-			HttpResponse response = client.get(url, headers, null);
-			
-			if (!response.isSuccess())
-				return;
-		
-			JSONArray array = (JSONArray)response.getResponseBodyAsJSON();
-			if(array == null)
-				return;
-			
-			for(int i = 0; i < array.length(); i++) {
-				JSONObject object = array.getJSONObject(i);
-				String id = object.getString(ID);
-				String name = object.getString(NAME);
-				m_applications.put(id, name);
+			while(iterator.hasNext()) {
+				Map.Entry<String, String> application = iterator.next();
+				applications.put(application.getKey(), application.getValue());
 			}
 		}
-		catch(IOException | JSONException e) {
-			m_applications = null;
+		catch(PageException e) {
+			return;
+		}
+		finally {
+			iterator.close();
+		}
+		m_applications = applications;
+		ApplicationIndex.addAll(m_authProvider, m_applications);
+	}
+	
+	private Map.Entry<String, String> readApplication(JSONReader reader) throws IOException, JSONException {
+		String id = null;
+		String name = null;
+		
+		reader.beginObject();
+		while(reader.hasNext()) {
+			String field = reader.nextName();
+			if(ID.equals(field))
+				id = reader.nextString();
+			else if(NAME.equals(field))
+				name = reader.nextString();
+			else
+				reader.skipValue();
 		}
+		reader.endObject();
+		
+		return id == null ? null : new AbstractMap.SimpleImmutableEntry<String, String>(id, name);
 	}
 }
@@ -24,9 +24,15 @@ import com.hcl.appscan.sdk.http.HttpResponse;
 public class AuthenticationHandler implements CoreConstants {
 
 	private IAuthenticationProvider m_authProvider;
+	private HttpClient m_client;
 	
 	public AuthenticationHandler(IAuthenticationProvider provider) {
+		this(provider, HttpClient.getDefault());
+	}
+	
+	public AuthenticationHandler(IAuthenticationProvider provider, HttpClient client) {
 		m_authProvider = provider;
+		m_client = client;
 	}
 	
 	/**
@@ -77,14 +83,14 @@ public class AuthenticationHandler implements CoreConstants {
 		    url = m_authProvider.getServer() + API_KEY_LOGIN;
 		}
 
-		HttpClient client = new HttpClient();
-	    HttpResponse response = client.postForm(url, headers, params);
+	    HttpResponse response = m_client.postForm(url, headers, params);
 	    
 		if(response.getResponseCode() == HttpsURLConnection.HTTP_OK || response.getResponseCode() == HttpsURLConnection.HTTP_CREATED) {
 			if(persist) {
 				JSONObject object = (JSONObject)response.getResponseBodyAsJSON();
 				String token = object.getString(TOKEN);
 				m_authProvider.saveConnection(token);
+				TokenValidityCache.markValid(m_authProvider);
 			}
 			return true;
 		}
@@ -94,22 +100,46 @@ public class AuthenticationHandler implements CoreConstants {
 		}
 	}
 	
+	/**
+	 * Checks if the token of the provider has expired. Tokens that were recently accepted by the service are
+	 * trusted without a network call. See {@link TokenValidityCache}.
+	 * 
+	 * @return True if the token has expired or is invalid.
+	 */
 	public boolean isTokenExpired() {
-		boolean isExpired;
-		String request_url = m_authProvider.getServer() + API_SCANS;
+		if(TokenValidityCache.isKnownValid(m_authProvider, this))
+			return false;
+		
+		if(validateToken()) {
+			TokenValidityCache.markValid(m_authProvider);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks the token of the provider against the service. Only the first scan is requested, to keep the
+	 * response small.
+	 * 
+	 * @return True if the service accepted the token.
+	 */
+	boolean validateToken() {
+		boolean isValid;
+		String request_url = m_authProvider.getServer() + API_SCANS + "?fields=Id"; //$NON-NLS-1$
 		
 		Map<String, String> headers = m_authProvider.getAuthorizationHeader(false);
 		headers.put("Accept", "application/json"); //$NON-NLS-1$ //$NON-NLS-2$
 		headers.put(CHARSET, UTF8);
+		headers.put("range", "items=0-0"); //$NON-NLS-1$ //$NON-NLS-2$
 		
-		HttpClient httpClient = new HttpClient();
 		HttpResponse httpResponse;
 		try {
-			httpResponse = httpClient.get(request_url, headers, null);
-			isExpired = httpResponse.getResponseCode() != HttpsURLConnection.HTTP_OK;
+			httpResponse = m_client.get(request_url, headers, null);
+			isValid = httpResponse.isSuccess();
+			httpResponse.close();
 		} catch (IOException e) {
-			isExpired = true;
+			isValid = false;
 		}
-		return isExpired;
+		return isValid;
 	}
 }
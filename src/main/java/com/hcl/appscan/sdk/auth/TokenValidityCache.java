@@ -0,0 +1,179 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Remembers which tokens were recently confirmed to be valid, so that a token does not have to be checked against
+ * the service before every request. A token is trusted until its time to live elapses or a request made with it is
+ * rejected with a 401. Tokens that are close to the end of their time to live are revalidated in the background.
+ * <p>
+ * Tokens are only held as hashes, and entries are dropped once their time to live has elapsed, so rotated tokens
+ * do not accumulate. The time to live, in seconds, can be set with the "TokenValidityTTL" system property. A value
+ * of 0 disables caching.
+ */
+public final class TokenValidityCache {
+
+	private static final String TTL_PROPERTY = "TokenValidityTTL"; //$NON-NLS-1$
+	private static final String AUTHORIZATION = "Authorization"; //$NON-NLS-1$
+	private static final long DEFAULT_TTL = 300;
+	private static final double REVALIDATE_AFTER = 0.8;
+
+	private static final Map<String, Entry> CACHE = new ConcurrentHashMap<String, Entry>();
+	private static final ExecutorService REVALIDATOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "AppScan token revalidation"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private TokenValidityCache() {
+	}
+
+	/**
+	 * Records that the current token of the given provider was accepted by the service.
+	 *
+	 * @param provider The {@link IAuthenticationProvider}.
+	 */
+	public static void markValid(IAuthenticationProvider provider) {
+		long ttl = getTTL();
+		if(ttl > 0) {
+			evictExpired();
+			CACHE.put(getKey(provider), new Entry(System.currentTimeMillis(), ttl));
+		}
+	}
+
+	/**
+	 * Forgets the current token of the given provider, for example after the service rejected it.
+	 *
+	 * @param provider The {@link IAuthenticationProvider}.
+	 */
+	public static void invalidate(IAuthenticationProvider provider) {
+		CACHE.remove(getKey(provider));
+	}
+
+	/**
+	 * Forgets a token that the service rejected. Called by the {@link com.hcl.appscan.sdk.http.HttpClient} for every
+	 * response with a 401 status.
+	 *
+	 * @param authorization The value of the "Authorization" header of the rejected request.
+	 */
+	public static void invalidate(String authorization) {
+		if(authorization != null)
+			CACHE.remove(hash(authorization));
+	}
+
+	/**
+	 * Removes all cached entries.
+	 */
+	public static void clear() {
+		CACHE.clear();
+	}
+
+	/**
+	 * Checks whether the current token of the given provider is known to be valid. If the token is close to
+	 * expiring from the cache, it is revalidated in the background using the given handler.
+	 *
+	 * @param provider The {@link IAuthenticationProvider}.
+	 * @param handler The {@link AuthenticationHandler} used to revalidate the token.
+	 * @return True if the token is known to be valid.
+	 */
+	static boolean isKnownValid(final IAuthenticationProvider provider, final AuthenticationHandler handler) {
+		final String key = getKey(provider);
+		final Entry entry = CACHE.get(key);
+		if(entry == null)
+			return false;
+
+		long age = System.currentTimeMillis() - entry.m_validated;
+		if(age >= entry.m_ttl) {
+			CACHE.remove(key);
+			return false;
+		}
+
+		if(age >= entry.m_ttl * REVALIDATE_AFTER && entry.startRevalidation()) {
+			REVALIDATOR.execute(new Runnable() {
+				@Override
+				public void run() {
+					if(handler.validateToken())
+						markValid(provider);
+					else
+						CACHE.remove(key);
+				}
+			});
+		}
+		return true;
+	}
+
+	private static String getKey(IAuthenticationProvider provider) {
+		Map<String, String> headers = provider.getAuthorizationHeader(false);
+		String token = headers == null ? null : headers.get(AUTHORIZATION);
+		if(token == null)
+			token = provider.getServer() + '|' + headers;
+		return hash(token);
+	}
+
+	/**
+	 * Hashes a token, so that tokens are not kept in memory for the life of the JVM.
+	 */
+	static String hash(String token) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+			StringBuilder key = new StringBuilder(digest.length * 2);
+			for(byte b : digest)
+				key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every JRE provides SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void evictExpired() {
+		long now = System.currentTimeMillis();
+		for(Iterator<Entry> entries = CACHE.values().iterator(); entries.hasNext();) {
+			Entry entry = entries.next();
+			if(now - entry.m_validated >= entry.m_ttl)
+				entries.remove();
+		}
+	}
+
+	private static long getTTL() {
+		try {
+			return Long.parseLong(System.getProperty(TTL_PROPERTY, Long.toString(DEFAULT_TTL))) * 1000;
+		} catch (NumberFormatException e) {
+			return DEFAULT_TTL * 1000;
+		}
+	}
+
+	private static class Entry {
+		private final long m_validated;
+		private final long m_ttl;
+		private boolean m_revalidating;
+
+		Entry(long validated, long ttl) {
+			m_validated = validated;
+			m_ttl = ttl;
+		}
+
+		synchronized boolean startRevalidation() {
+			if(m_revalidating)
+				return false;
+			m_revalidating = true;
+			return true;
+		}
+	}
+}
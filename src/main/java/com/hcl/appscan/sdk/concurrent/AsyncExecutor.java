@@ -0,0 +1,153 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads shared by all asynchronous operations in the SDK.
+ * <p>
+ * Blocking work, such as uploads and service requests, runs on a small pool whose size can be set with the
+ * "AsyncThreads" system property. Waiting is never done on a pool thread: delayed work, such as the next status
+ * check of a running scan, is scheduled on a single timer thread and handed to the pool when it is due. Any number
+ * of scans can therefore be in flight while only a handful of threads exist. Work that blocks for the length of a
+ * scan, such as running one, gets a thread of its own instead.
+ */
+public final class AsyncExecutor {
+
+	private static final String THREADS_PROPERTY = "AsyncThreads"; //$NON-NLS-1$
+	private static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+	private static final ExecutorService EXECUTOR;
+	private static final ExecutorService LONG_RUNNING;
+	private static final ScheduledExecutorService SCHEDULER;
+
+	static {
+		int threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS));
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("AppScan async", true)); //$NON-NLS-1$
+		executor.allowCoreThreadTimeOut(true);
+		EXECUTOR = executor;
+
+		LONG_RUNNING = Executors.newCachedThreadPool(new NamedThreadFactory("AppScan scan", false)); //$NON-NLS-1$
+
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AppScan scheduler", true)); //$NON-NLS-1$
+		scheduler.setRemoveOnCancelPolicy(true);
+		SCHEDULER = scheduler;
+	}
+
+	private AsyncExecutor() {
+	}
+
+	/**
+	 * Gets the pool that runs blocking work.
+	 *
+	 * @return The shared {@link ExecutorService}.
+	 */
+	public static ExecutorService getExecutor() {
+		return EXECUTOR;
+	}
+
+	/**
+	 * Answers whether the current thread belongs to the shared pool or the timer. Code that would otherwise sleep
+	 * before trying again should fail instead on these threads, or {@link #schedule(Runnable, long, TimeUnit)} the
+	 * next attempt.
+	 *
+	 * @return True if the current thread must not wait.
+	 */
+	public static boolean isPoolThread() {
+		return Thread.currentThread() instanceof PoolThread;
+	}
+
+	/**
+	 * Runs a task on the shared pool.
+	 *
+	 * @param task The task.
+	 * @return An {@link AsyncResult} that completes with the result of the task.
+	 */
+	public static <T> AsyncResult<T> supply(Callable<T> task) {
+		return supply(EXECUTOR, task);
+	}
+
+	/**
+	 * Runs a task that blocks for a long time, such as a whole scan, on a thread of its own, so that it does not
+	 * hold one of the threads of the shared pool.
+	 *
+	 * @param task The task.
+	 * @return An {@link AsyncResult} that completes with the result of the task.
+	 */
+	public static <T> AsyncResult<T> supplyLongRunning(Callable<T> task) {
+		return supply(LONG_RUNNING, task);
+	}
+
+	private static <T> AsyncResult<T> supply(Executor executor, final Callable<T> task) {
+		final AsyncResult<T> result = new AsyncResult<T>();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if(result.isDone())
+					return;
+				try {
+					result.complete(task.call());
+				} catch (Throwable e) {
+					result.fail(e);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Runs a task on the shared pool after a delay, without holding a thread while waiting.
+	 *
+	 * @param task The task.
+	 * @param delay The delay.
+	 * @param unit The unit of the delay.
+	 */
+	public static void schedule(final Runnable task, long delay, TimeUnit unit) {
+		SCHEDULER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				EXECUTOR.execute(task);
+			}
+		}, delay, unit);
+	}
+
+	private static final class PoolThread extends Thread {
+		PoolThread(Runnable target, String name) {
+			super(target, name);
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String m_name;
+		private final boolean m_pool;
+		private final AtomicInteger m_count = new AtomicInteger();
+
+		NamedThreadFactory(String name, boolean pool) {
+			m_name = name;
+			m_pool = pool;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			String name = m_name + " " + m_count.incrementAndGet(); //$NON-NLS-1$
+			Thread thread = m_pool ? new PoolThread(r, name) : new Thread(r, name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
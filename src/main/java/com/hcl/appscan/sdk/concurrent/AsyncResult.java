@@ -0,0 +1,300 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The result of an asynchronous operation. Callbacks can be registered to be told of the outcome, and stages can
+ * be chained to run when the result is available, so that no thread has to wait for it.
+ * <p>
+ * Callbacks run on the thread that completes the result, or on the calling thread if the result is already
+ * complete. They should therefore be short. Longer work should be handed to {@link AsyncExecutor}.
+ *
+ * @param <T> The type of the result.
+ */
+public class AsyncResult<T> implements Future<T> {
+
+	private T m_value;
+	private Throwable m_error;
+	private boolean m_done;
+	private boolean m_cancelled;
+	private List<ICallback<? super T>> m_callbacks = new ArrayList<ICallback<? super T>>();
+
+	/**
+	 * Creates a result that is already complete.
+	 *
+	 * @param value The value.
+	 * @return A completed {@link AsyncResult}.
+	 */
+	public static <T> AsyncResult<T> completed(T value) {
+		AsyncResult<T> result = new AsyncResult<T>();
+		result.complete(value);
+		return result;
+	}
+
+	/**
+	 * Creates a result that has already failed.
+	 *
+	 * @param error The cause of the failure.
+	 * @return A failed {@link AsyncResult}.
+	 */
+	public static <T> AsyncResult<T> failed(Throwable error) {
+		AsyncResult<T> result = new AsyncResult<T>();
+		result.fail(error);
+		return result;
+	}
+
+	/**
+	 * Combines several results into one that completes when all of them have completed. It fails with the first
+	 * failure, once every result is done.
+	 *
+	 * @param results The results to combine.
+	 * @return An {@link AsyncResult} holding the values in the same order.
+	 */
+	public static <T> AsyncResult<List<T>> all(final List<AsyncResult<T>> results) {
+		final AsyncResult<List<T>> combined = new AsyncResult<List<T>>();
+		if(results.isEmpty()) {
+			combined.complete(Collections.<T>emptyList());
+			return combined;
+		}
+
+		final AtomicInteger remaining = new AtomicInteger(results.size());
+		final Throwable[] failure = new Throwable[1];
+		for(AsyncResult<T> result : results) {
+			result.addCallback(new ICallback<T>() {
+				@Override
+				public void onSuccess(T value) {
+					done();
+				}
+
+				@Override
+				public void onFailure(Throwable error) {
+					synchronized (failure) {
+						if(failure[0] == null)
+							failure[0] = error;
+					}
+					done();
+				}
+
+				private void done() {
+					if(remaining.decrementAndGet() > 0)
+						return;
+					synchronized (failure) {
+						if(failure[0] != null) {
+							combined.fail(failure[0]);
+							return;
+						}
+					}
+					List<T> values = new ArrayList<T>(results.size());
+					for(AsyncResult<T> result : results)
+						values.add(result.m_value);
+					combined.complete(values);
+				}
+			});
+		}
+		return combined;
+	}
+
+	/**
+	 * Completes this result with a value.
+	 *
+	 * @param value The value.
+	 * @return True if this call completed the result, false if it was already complete.
+	 */
+	public boolean complete(T value) {
+		List<ICallback<? super T>> callbacks;
+		synchronized (this) {
+			if(m_done)
+				return false;
+			m_value = value;
+			m_done = true;
+			callbacks = m_callbacks;
+			m_callbacks = null;
+			notifyAll();
+		}
+		for(ICallback<? super T> callback : callbacks)
+			notifySuccess(callback, value);
+		return true;
+	}
+
+	/**
+	 * Completes this result with a failure.
+	 *
+	 * @param error The cause of the failure.
+	 * @return True if this call completed the result, false if it was already complete.
+	 */
+	public boolean fail(Throwable error) {
+		return fail(error, false);
+	}
+
+	private boolean fail(Throwable error, boolean cancel) {
+		List<ICallback<? super T>> callbacks;
+		synchronized (this) {
+			if(m_done)
+				return false;
+			// Set together with the outcome, so a result that completed normally is never seen as cancelled.
+			m_cancelled = cancel;
+			m_error = error;
+			m_done = true;
+			callbacks = m_callbacks;
+			m_callbacks = null;
+			notifyAll();
+		}
+		for(ICallback<? super T> callback : callbacks)
+			notifyFailure(callback, error);
+		return true;
+	}
+
+	/**
+	 * Registers a callback that is told of the outcome.
+	 *
+	 * @param callback The {@link ICallback}.
+	 * @return This result, for chaining.
+	 */
+	public AsyncResult<T> addCallback(ICallback<? super T> callback) {
+		synchronized (this) {
+			if(!m_done) {
+				m_callbacks.add(callback);
+				return this;
+			}
+		}
+		if(m_error == null)
+			notifySuccess(callback, m_value);
+		else
+			notifyFailure(callback, m_error);
+		return this;
+	}
+
+	/**
+	 * Chains a stage that transforms the value once it is available. A failure of this result, or of the
+	 * function, fails the returned result.
+	 *
+	 * @param function The transformation.
+	 * @return The result of the transformation.
+	 */
+	public <R> AsyncResult<R> map(final IFunction<? super T, ? extends R> function) {
+		final AsyncResult<R> next = new AsyncResult<R>();
+		addCallback(new ICallback<T>() {
+			@Override
+			public void onSuccess(T value) {
+				try {
+					next.complete(function.apply(value));
+				} catch (Throwable e) {
+					next.fail(e);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable error) {
+				next.fail(error);
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * Chains another asynchronous operation that starts once the value is available.
+	 *
+	 * @param function Starts the next operation.
+	 * @return The result of the next operation.
+	 */
+	public <R> AsyncResult<R> then(final IFunction<? super T, AsyncResult<R>> function) {
+		final AsyncResult<R> next = new AsyncResult<R>();
+		addCallback(new ICallback<T>() {
+			@Override
+			public void onSuccess(T value) {
+				try {
+					function.apply(value).addCallback(new ICallback<R>() {
+						@Override
+						public void onSuccess(R result) {
+							next.complete(result);
+						}
+
+						@Override
+						public void onFailure(Throwable error) {
+							next.fail(error);
+						}
+					});
+				} catch (Throwable e) {
+					next.fail(e);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable error) {
+				next.fail(error);
+			}
+		});
+		return next;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return fail(new CancellationException(), true);
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return m_cancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return m_done;
+	}
+
+	@Override
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while(!m_done)
+			wait();
+		return getValue();
+	}
+
+	@Override
+	public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(!m_done) {
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return getValue();
+	}
+
+	private T getValue() throws ExecutionException {
+		if(m_cancelled)
+			throw new CancellationException();
+		if(m_error != null)
+			throw new ExecutionException(m_error);
+		return m_value;
+	}
+
+	private static <T> void notifySuccess(ICallback<? super T> callback, T value) {
+		try {
+			callback.onSuccess(value);
+		} catch (RuntimeException e) {
+			// A failing callback must not prevent the others from running.
+		}
+	}
+
+	private static void notifyFailure(ICallback<?> callback, Throwable error) {
+		try {
+			callback.onFailure(error);
+		} catch (RuntimeException e) {
+			// A failing callback must not prevent the others from running.
+		}
+	}
+}
@@ -0,0 +1,28 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.concurrent;
+
+/**
+ * Receives the outcome of an {@link AsyncResult}.
+ *
+ * @param <T> The type of the result.
+ */
+public interface ICallback<T> {
+
+	/**
+	 * Called when the operation completed successfully.
+	 *
+	 * @param result The result.
+	 */
+	public void onSuccess(T result);
+
+	/**
+	 * Called when the operation failed or was cancelled.
+	 *
+	 * @param error The cause of the failure.
+	 */
+	public void onFailure(Throwable error);
+}
@@ -0,0 +1,24 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.concurrent;
+
+/**
+ * Transforms the result of an {@link AsyncResult}.
+ *
+ * @param <T> The type of the input.
+ * @param <R> The type of the output.
+ */
+public interface IFunction<T, R> {
+
+	/**
+	 * Applies the function.
+	 *
+	 * @param input The result of the previous stage.
+	 * @return The result of this stage.
+	 * @throws Exception If the stage fails. The exception fails the resulting {@link AsyncResult}.
+	 */
+	public R apply(T input) throws Exception;
+}
@@ -8,11 +8,30 @@ public class HttpException extends IOException {
 
 	private static final long serialVersionUID = 1L;
 
+	private int m_responseCode = -1;
+	private String m_reason;
+
 	public HttpException(int responseCode, String message) {
 		super(Messages.getMessage("error.http",  responseCode, message)); //$NON-NLS-1$
+		m_responseCode = responseCode;
+		m_reason = message;
 	}
 
 	public HttpException(String message, Throwable throwable) {
 		super(message, throwable);
 	}
+
+	/**
+	 * @return The response code, or -1 if the exception was not caused by a response.
+	 */
+	public int getResponseCode() {
+		return m_responseCode;
+	}
+
+	/**
+	 * @return The reason given by the server, usually the response body, or null if there was none.
+	 */
+	public String getReason() {
+		return m_reason;
+	}
 }
@@ -0,0 +1,253 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.hcl.appscan.sdk.Messages;
+import com.hcl.appscan.sdk.error.HttpException;
+
+/**
+ * Uploads a file as a series of ranges, several at a time. Each range is sent in a put request with a
+ * "Content-Range: bytes first-last/total" header. The server answers intermediate ranges with 202, 204 or 308,
+ * and answers the range that completes the file with 200 or 201 and the final response body.
+ * <p>
+ * Completed ranges are recorded in a journal next to the file ("&lt;file&gt;.upload"). Only failed ranges are
+ * retried, as the client's {@link RetryPolicy} allows, and if the upload does not complete, calling
+ * {@link #upload(String, Map, File)} again for the same file and url sends only the ranges that are still missing.
+ */
+public class ChunkedUpload {
+
+	public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	private static final String JOURNAL = ".upload"; //$NON-NLS-1$
+	private static final String URL = "url"; //$NON-NLS-1$
+	private static final String LENGTH = "length"; //$NON-NLS-1$
+	private static final String MODIFIED = "modified"; //$NON-NLS-1$
+	private static final String CHUNK_SIZE = "chunkSize"; //$NON-NLS-1$
+	private static final String COMPLETED = "completed"; //$NON-NLS-1$
+	private static final int HTTP_RESUME_INCOMPLETE = 308;
+	private static final String ERROR_INCOMPLETE = "error.upload.incomplete"; //$NON-NLS-1$
+
+	private HttpClient m_client;
+	private int m_chunkSize;
+	private int m_parallelism;
+
+	public ChunkedUpload(HttpClient client) {
+		this(client, DEFAULT_CHUNK_SIZE, DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param client The {@link HttpClient} used to send the ranges. Its {@link RetryPolicy} decides how often a
+	 * failed range is sent again.
+	 * @param chunkSize The size of each range in bytes.
+	 * @param parallelism The number of ranges to send at the same time.
+	 */
+	public ChunkedUpload(HttpClient client, int chunkSize, int parallelism) {
+		m_client = client;
+		m_chunkSize = chunkSize;
+		m_parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Uploads a file, resuming an earlier upload of the same file to the same url if one was interrupted.
+	 *
+	 * @param url The URL string.
+	 * @param headerProperties An optional Map of header properties, sent with every range.
+	 * @param file The file to upload.
+	 * @return The response to the range that completed the upload.
+	 * @throws IOException If a range could not be uploaded. Completed ranges are kept in the journal.
+	 */
+	public HttpResponse upload(final String url, final Map<String, String> headerProperties, final File file) throws IOException {
+		final long length = file.length();
+		final int chunks = (int)Math.max(1, (length + m_chunkSize - 1) / m_chunkSize);
+		final Journal journal = new Journal(url, file);
+
+		List<Integer> pending = new ArrayList<Integer>();
+		for(int i = 0; i < chunks; i++) {
+			if(!journal.isComplete(i))
+				pending.add(i);
+		}
+		// Every range was sent but the final response was lost. Send the last one again to get it.
+		if(pending.isEmpty())
+			pending.add(chunks - 1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(m_parallelism, pending.size()));
+		List<Future<HttpResponse>> results = new ArrayList<Future<HttpResponse>>();
+		try {
+			for(final int chunk : pending) {
+				results.add(executor.submit(new Callable<HttpResponse>() {
+					@Override
+					public HttpResponse call() throws IOException {
+						HttpResponse response = sendChunk(url, headerProperties, file, chunk, length);
+						journal.setComplete(chunk);
+						return response;
+					}
+				}));
+			}
+
+			HttpResponse last = null;
+			IOException failure = null;
+			for(Future<HttpResponse> result : results) {
+				try {
+					HttpResponse response = result.get();
+					int status = response.getResponseCode();
+					if(status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_CREATED)
+						last = response;
+					else
+						response.close();
+				} catch (ExecutionException e) {
+					if(failure == null)
+						failure = e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+			}
+
+			if(failure != null)
+				throw failure;
+			journal.delete();
+			if(last == null)
+				throw new IOException(Messages.getMessage(ERROR_INCOMPLETE, file.getName()));
+			return last;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private HttpResponse sendChunk(String url, Map<String, String> headerProperties, File file, int chunk, long total) throws IOException {
+		long offset = (long)chunk * m_chunkSize;
+		long size = Math.min(m_chunkSize, total - offset);
+
+		Map<String, String> headers = new HashMap<String, String>();
+		if(headerProperties != null)
+			headers.putAll(headerProperties);
+		headers.put("Content-Range", "bytes " + offset + "-" + (offset + size - 1) + "/" + total); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		// The client already retries the range as its RetryPolicy allows.
+		HttpResponse response = m_client.putRange(url, headers, file, offset, size);
+		int status = response.getResponseCode();
+		if(response.isSuccess() || status == HTTP_RESUME_INCOMPLETE)
+			return response;
+
+		String reason = response.getResponseBodyAsString();
+		throw new HttpException(status, reason == null ? Messages.getMessage("message.unknown") : reason); //$NON-NLS-1$
+	}
+
+	/**
+	 * Records which ranges of a file have been uploaded.
+	 */
+	private class Journal {
+		private File m_file;
+		private Properties m_properties;
+		private BitSet m_completed;
+
+		Journal(String url, File file) {
+			m_file = new File(file.getAbsolutePath() + JOURNAL);
+			m_completed = new BitSet();
+			m_properties = load();
+
+			if(url.equals(m_properties.getProperty(URL))
+					&& Long.toString(file.length()).equals(m_properties.getProperty(LENGTH))
+					&& Long.toString(file.lastModified()).equals(m_properties.getProperty(MODIFIED))
+					&& Integer.toString(m_chunkSize).equals(m_properties.getProperty(CHUNK_SIZE))) {
+				try {
+					for(String chunk : m_properties.getProperty(COMPLETED, "").split(",")) { //$NON-NLS-1$ //$NON-NLS-2$
+						if(chunk.length() > 0)
+							m_completed.set(Integer.parseInt(chunk));
+					}
+				} catch (NumberFormatException e) {
+					m_completed.clear();
+				}
+			}
+			else {
+				m_properties.clear();
+				m_properties.setProperty(URL, url);
+				m_properties.setProperty(LENGTH, Long.toString(file.length()));
+				m_properties.setProperty(MODIFIED, Long.toString(file.lastModified()));
+				m_properties.setProperty(CHUNK_SIZE, Integer.toString(m_chunkSize));
+			}
+		}
+
+		synchronized boolean isComplete(int chunk) {
+			return m_completed.get(chunk);
+		}
+
+		synchronized void setComplete(int chunk) {
+			m_completed.set(chunk);
+			StringBuilder builder = new StringBuilder();
+			for(int i = m_completed.nextSetBit(0); i >= 0; i = m_completed.nextSetBit(i + 1)) {
+				if(builder.length() > 0)
+					builder.append(',');
+				builder.append(i);
+			}
+			m_properties.setProperty(COMPLETED, builder.toString());
+			save();
+		}
+
+		synchronized void delete() {
+			m_file.delete();
+		}
+
+		private Properties load() {
+			Properties properties = new Properties();
+			if(!m_file.isFile())
+				return properties;
+
+			InputStream in = null;
+			try {
+				in = new FileInputStream(m_file);
+				properties.load(in);
+			} catch (IOException | IllegalArgumentException e) {
+				properties.clear();
+			} finally {
+				try {
+					if(in != null)
+						in.close();
+				} catch (IOException e) {
+				}
+			}
+			return properties;
+		}
+
+		private void save() {
+			OutputStream out = null;
+			try {
+				out = new FileOutputStream(m_file);
+				m_properties.store(out, null);
+			} catch (IOException e) {
+				// The journal is an optimization, the upload can continue without it.
+			} finally {
+				try {
+					if(out != null)
+						out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+}
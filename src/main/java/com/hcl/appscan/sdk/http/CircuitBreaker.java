@@ -0,0 +1,91 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.IOException;
+
+import com.hcl.appscan.sdk.Messages;
+
+/**
+ * Stops sending requests to a host that keeps failing. After a number of consecutive failures the circuit opens and
+ * requests fail immediately. Once the cool down has elapsed a single trial request is let through: if it succeeds
+ * the circuit closes, otherwise it opens again.
+ * <p>
+ * The thresholds can be changed with the "HttpCircuitFailures" and "HttpCircuitCoolDown" (milliseconds) system
+ * properties.
+ */
+public class CircuitBreaker {
+
+	private static final String FAILURES_PROPERTY = "HttpCircuitFailures"; //$NON-NLS-1$
+	private static final String COOL_DOWN_PROPERTY = "HttpCircuitCoolDown"; //$NON-NLS-1$
+	private static final int DEFAULT_FAILURES = 5;
+	private static final long DEFAULT_COOL_DOWN = 30000;
+	private static final String ERROR_OPEN = "error.circuit.open"; //$NON-NLS-1$
+
+	private final String m_host;
+	private final int m_threshold = Math.max(1, Integer.getInteger(FAILURES_PROPERTY, DEFAULT_FAILURES));
+	private final long m_coolDown = Long.getLong(COOL_DOWN_PROPERTY, DEFAULT_COOL_DOWN);
+	private int m_failures;
+	private long m_openedAt;
+	private boolean m_trialInProgress;
+
+	CircuitBreaker(String host) {
+		m_host = host;
+	}
+
+	/**
+	 * Answers whether the circuit is currently open.
+	 *
+	 * @return True if requests to the host are being rejected.
+	 */
+	public synchronized boolean isOpen() {
+		return m_failures >= m_threshold && System.currentTimeMillis() - m_openedAt < m_coolDown;
+	}
+
+	/**
+	 * Called before a request is sent.
+	 *
+	 * @throws OpenException If the circuit is open.
+	 */
+	synchronized void acquire() throws OpenException {
+		if(m_failures < m_threshold)
+			return;
+
+		long remaining = m_coolDown - (System.currentTimeMillis() - m_openedAt);
+		if(remaining > 0 || m_trialInProgress)
+			throw new OpenException(Messages.getMessage(ERROR_OPEN, m_host, Math.max(1, remaining / 1000)));
+		m_trialInProgress = true;
+	}
+
+	/**
+	 * Records that the host answered normally.
+	 */
+	synchronized void success() {
+		m_failures = 0;
+		m_trialInProgress = false;
+	}
+
+	/**
+	 * Records that the host could not be reached or answered that it is unavailable.
+	 */
+	synchronized void failure() {
+		m_trialInProgress = false;
+		if(++m_failures >= m_threshold)
+			m_openedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Thrown instead of sending a request while the circuit is open.
+	 */
+	public static class OpenException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public OpenException(String message) {
+			super(message);
+		}
+	}
+}
@@ -7,38 +7,99 @@
 package com.hcl.appscan.sdk.http;
 
 import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
+import com.hcl.appscan.sdk.auth.TokenValidityCache;
+import com.hcl.appscan.sdk.concurrent.AsyncExecutor;
+
+/**
+ * A thread-safe HTTP client. A single instance can be shared by any number of providers and threads.
+ */
 public class HttpClient {
 	
-	private String m_boundary;
-	private long m_totalMultipartLength;
-	private long m_uploadedMultipartLength;
     private static final String CR_LF = "\r\n"; //$NON-NLS-1$
     private static final String TWO_HYPHENS = "--"; //$NON-NLS-1$
+    private static final String UTF8 = "UTF-8"; //$NON-NLS-1$
+    private static final String ACCEPT_ENCODING = "Accept-Encoding"; //$NON-NLS-1$
+    private static final String CONTENT_ENCODING = "Content-Encoding"; //$NON-NLS-1$
+    private static final String GZIP = "gzip"; //$NON-NLS-1$
+    private static final String DEFLATE = "deflate"; //$NON-NLS-1$
+    private static final String IDENTITY = "identity"; //$NON-NLS-1$
+    private static final String AUTHORIZATION = "Authorization"; //$NON-NLS-1$
+    private static final int MIN_COMPRESS_SIZE = 1024;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    
+    private static final HttpClient DEFAULT = new HttpClient();
     
     private IHttpProgress m_progressAdapter;
+    private HttpConnectionManager m_connectionManager;
+    private volatile RetryPolicy m_retryPolicy = RetryPolicy.getDefault();
 	
 	
 	public enum Method {
 		GET, POST, PUT, DELETE;
 	}
 	
-	public HttpClient(IHttpProgress progressAdapter) {
+	public HttpClient(IHttpProgress progressAdapter, HttpConnectionManager connectionManager) {
 		m_progressAdapter = progressAdapter;
+		m_connectionManager = connectionManager;
+	}
+	
+	public HttpClient(IHttpProgress progressAdapter) {
+		this(progressAdapter, HttpConnectionManager.getDefault());
 	}
 	
 	public HttpClient() {
 		this(new DefaultHttpProgress());
 	}
 	
+	/**
+	 * Gets a client that is shared by all providers that were not given one explicitly.
+	 * 
+	 * @return The shared {@link HttpClient}.
+	 */
+	public static HttpClient getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Gets the {@link HttpConnectionManager} used by this client.
+	 * 
+	 * @return The {@link HttpConnectionManager}.
+	 */
+	public HttpConnectionManager getConnectionManager() {
+		return m_connectionManager;
+	}
+	
+	/**
+	 * Sets the policy that decides which failed requests are retried. Requests sent from a thread of the
+	 * {@link AsyncExecutor} are never retried, since those threads must not wait.
+	 * 
+	 * @param policy The {@link RetryPolicy}, or {@link RetryPolicy#NONE} to disable retries.
+	 */
+	public void setRetryPolicy(RetryPolicy policy) {
+		m_retryPolicy = policy == null ? RetryPolicy.NONE : policy;
+	}
+	
 	// ==============================
 	// HTTP request methods
 	// ==============================
@@ -168,6 +229,119 @@ public class HttpClient {
 		return delete(url, headerProperties, body);
 	}
 	
+	/**
+	 * Download the content at the given url into a file. If an earlier download of the same url into the same
+	 * file was interrupted, only the remaining bytes are requested, provided the server supports range requests
+	 * and the content has not changed since.
+	 * 
+	 * @param url The URL string.
+	 * @param headerProperties An optional Map of header properties.
+	 * @param destination The file to save the content to.
+	 * @return The response. If it is successful, its body has been written to the destination.
+	 * @throws IOException If the request fails, or the transfer is interrupted. An interrupted transfer
+	 * can be resumed by calling this method again.
+	 */
+	public HttpResponse download(String url, Map<String, String> headerProperties, File destination)
+			throws IOException {
+		return download(url, headerProperties, destination, 1);
+	}
+	
+	private HttpResponse download(String url, Map<String, String> headerProperties, File destination, int attempt)
+			throws IOException {
+		PartialDownload partial = new PartialDownload(url, destination);
+		long offset = partial.getOffset();
+		if (offset == 0)
+			partial.reset();
+		
+		Map<String, String> headers = new HashMap<String, String>();
+		// Ranges and the part file refer to the stored bytes, so ask for the content unencoded.
+		headers.put(ACCEPT_ENCODING, IDENTITY);
+		if (headerProperties != null)
+			headers.putAll(headerProperties);
+		if (offset > 0) {
+			headers.put("Range", "bytes=" + offset + "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			headers.put("If-Range", partial.getValidator()); //$NON-NLS-1$
+		}
+		
+		HttpResponse response = get(url, headers, null);
+		int status = response.getResponseCode();
+		boolean resume = offset > 0 && response.isRangeFrom(offset);
+		
+		if (offset > 0 && (status == HTTP_RANGE_NOT_SATISFIABLE || (status == HttpURLConnection.HTTP_PARTIAL && !resume))) {
+			// The part file no longer matches the content, start over.
+			response.close();
+			partial.reset();
+			return download(url, headerProperties, destination, attempt);
+		}
+		if (!response.isSuccess())
+			return response;
+		
+		if (!resume)
+			partial.start(response);
+		try {
+			response.writeResponseBody(partial.getPartFile(), resume);
+		} catch (IOException e) {
+			partial.interrupted();
+			// The transfer broke off, pick it up where it stopped.
+			RetryPolicy policy = getRetryPolicy();
+			if (attempt >= policy.getAttempts() || !policy.isRetryable(Method.GET, e))
+				throw e;
+			pause(policy.getDelay(attempt, null));
+			return download(url, headerProperties, destination, attempt + 1);
+		}
+		
+		HttpResponse.moveAtomically(partial.getPartFile(), destination.getAbsoluteFile());
+		partial.complete();
+		return response;
+	}
+	
+	/**
+	 * Submit a range of a file as the body of a put request.
+	 * 
+	 * @param url The URL string.
+	 * @param headerProperties An optional Map of header properties.
+	 * @param file The file containing the body.
+	 * @param offset The offset of the first byte to send.
+	 * @param length The number of bytes to send.
+	 * @return The response.
+	 * @throws IOException
+	 */
+	public HttpResponse putRange(final String url, final Map<String, String> headerProperties, final File file,
+			final long offset, final long length) throws IOException {
+		return execute(Method.PUT, url, headerProperties, new Request() {
+			@Override
+			public HttpResponse send() throws IOException {
+				return sendRange(url, headerProperties, file, offset, length);
+			}
+		});
+	}
+	
+	private HttpResponse sendRange(String url, Map<String, String> headerProperties, File file, long offset, long length)
+			throws IOException {
+		HttpURLConnection conn = makeConnection(url, Method.PUT, headerProperties);
+		conn.setDoOutput(true);
+		conn.setFixedLengthStreamingMode(length);
+		
+		FileInputStream in = new FileInputStream(file);
+		try {
+			OutputStream out = conn.getOutputStream();
+			FileChannel channel = in.getChannel();
+			WritableByteChannel target = Channels.newChannel(out);
+			long sent = 0;
+			while (sent < length) {
+				long count = channel.transferTo(offset + sent, length - sent, target);
+				if (count <= 0 && offset + sent >= channel.size())
+					throw new EOFException(file.getAbsolutePath());
+				sent += count;
+			}
+			out.close();
+		}
+		finally {
+			in.close();
+		}
+		return new HttpResponse(conn);
+	}
+	
 	/**
 	 * Submit a multipart entity using the post request.
 	 * 
@@ -180,77 +354,226 @@ public class HttpClient {
 	public HttpResponse postMultipart(String url,
 			Map<String, String> headerProperties, List<HttpPart> parts)
 			throws IOException {
-		m_boundary = "*****"+Long.toString(System.currentTimeMillis())+"*****"; //$NON-NLS-1$ //$NON-NLS-2$
-		headerProperties.put("Content-Type", "multipart/form-data; boundary=" + m_boundary); //$NON-NLS-1$ //$NON-NLS-2$
-		return makeMultipartRequest(Method.POST, url, headerProperties, parts);
+		String boundary = "*****"+Long.toString(System.currentTimeMillis())+"*****"; //$NON-NLS-1$ //$NON-NLS-2$
+		headerProperties.put("Content-Type", "multipart/form-data; boundary=" + boundary); //$NON-NLS-1$ //$NON-NLS-2$
+		return makeMultipartRequest(Method.POST, url, headerProperties, parts, boundary);
 	}
 	
-	private HttpResponse makeMultipartRequest(Method method, String url,
-			Map<String, String> headerProperties, List<HttpPart> parts)
+	private HttpResponse makeMultipartRequest(final Method method, final String url,
+			final Map<String, String> headerProperties, final List<HttpPart> parts, final String boundary)
+					throws IOException {
+		final boolean compress = isCompressible(parts) && m_connectionManager.shouldCompress(new URL(url));
+		HttpResponse response = execute(method, url, headerProperties, new Request() {
+			@Override
+			public HttpResponse send() throws IOException {
+				return sendMultipartRequest(method, url, headerProperties, parts, boundary, compress);
+			}
+		});
+		if (compress && isCompressionRejected(response, url))
+			return makeMultipartRequest(method, url, headerProperties, parts, boundary);
+		return response;
+	}
+	
+	private HttpResponse sendMultipartRequest(Method method, String url,
+			Map<String, String> headerProperties, List<HttpPart> parts, String boundary, boolean compress)
 					throws IOException {
 		HttpURLConnection conn = makeConnection(url, method, headerProperties);
-				
-		DataOutputStream outputStream = null;
-		conn.setChunkedStreamingMode(1024);
+		conn.setDoOutput(true);
+		conn.setUseCaches(false);
 		
-		if (parts!=null && !parts.isEmpty()) {
-			conn.setDoOutput(true);
-			conn.setUseCaches(false);
-			
-			outputStream = new DataOutputStream(conn.getOutputStream());
-			
-			m_uploadedMultipartLength = 0;
-			m_totalMultipartLength = getTotalPartsLength(parts);
-			
-			updateProgress();
-			
-			StringBuilder builder;
-			Map<String, String> partHeaders;
-			for (HttpPart part : parts) {
-				builder = new StringBuilder();
-				builder.append(TWO_HYPHENS+m_boundary+CR_LF);
-				partHeaders = part.getPartHeaders();
-				Iterator<String> headers = partHeaders.keySet().iterator();
-				String header;
-				while (headers.hasNext()) {
-					header = headers.next();
-					builder.append(header + ": " +partHeaders.get(header)+CR_LF); //$NON-NLS-1$
+		List<byte[]> partHeaders = new ArrayList<byte[]>();
+		if (parts != null) {
+			for (HttpPart part : parts)
+				partHeaders.add(getPartHeaderBytes(part, boundary));
+		}
+		byte[] separator = CR_LF.getBytes(UTF8);
+		byte[] closing = (TWO_HYPHENS+boundary+TWO_HYPHENS+CR_LF).getBytes(UTF8);
+		
+		// With the exact length known the body is sent without chunk framing.
+		long contentLength = compress ? -1 : getContentLength(parts, partHeaders, separator.length, closing.length);
+		if (contentLength >= 0)
+			conn.setFixedLengthStreamingMode(contentLength);
+		else
+			conn.setChunkedStreamingMode(ReadAhead.BUFFER_SIZE);
+		
+		if (compress)
+			conn.setRequestProperty(CONTENT_ENCODING, GZIP);
+		
+		OutputStream outputStream = conn.getOutputStream();
+		if (compress)
+			outputStream = new GZIPOutputStream(outputStream, ReadAhead.BUFFER_SIZE);
+		try {
+			if (parts != null && !parts.isEmpty()) {
+				UploadProgress progress = new UploadProgress(getTotalPartsLength(parts));
+				for (int i = 0; i < parts.size(); i++) {
+					outputStream.write(partHeaders.get(i));
+					writePartBody(parts.get(i).openPartBodyInputStream(), outputStream, progress);
+					outputStream.write(separator);
 				}
-				outputStream.writeBytes(builder.toString()+CR_LF);
-				outputStream.flush();
-				byte[] buffer = new byte[1024];
-			    int bytesRead;
-			    while ((bytesRead = part.getPartBodyInputStream().read(buffer)) != -1)
-			    {
-			    	outputStream.write(buffer, 0, bytesRead);
-			    	m_uploadedMultipartLength += bytesRead;
-					updateProgress();
-			    }
-				outputStream.writeBytes(CR_LF);
-				outputStream.flush();
+				progress.done();
 			}
-			outputStream.writeBytes(TWO_HYPHENS+m_boundary+TWO_HYPHENS+CR_LF);
+			outputStream.write(closing);
 			outputStream.flush();
-			updateProgress();
+		} finally {
+			outputStream.close();
 		}
-		outputStream.flush();
-		outputStream.close();
 		
 		m_progressAdapter.endProgress();
 		
 		return new HttpResponse(conn);
 	}
+	
+	/**
+	 * Writes a part body, reading the next block on a separate thread while the current one is being sent.
+	 */
+	private void writePartBody(InputStream body, OutputStream outputStream, UploadProgress progress) throws IOException {
+		if (body == null)
+			return;
+		
+		ReadAhead reader = new ReadAhead(body);
+		reader.start();
+		try {
+			ReadAhead.Block block;
+			while ((block = reader.take()) != null) {
+				outputStream.write(block.m_data, 0, block.m_length);
+				progress.add(block.m_length);
+				reader.recycle(block);
+			}
+		} finally {
+			reader.cancel();
+			body.close();
+		}
+	}
+	
+	private byte[] getPartHeaderBytes(HttpPart part, String boundary) throws UnsupportedEncodingException {
+		StringBuilder builder = new StringBuilder();
+		builder.append(TWO_HYPHENS+boundary+CR_LF);
+		Map<String, String> partHeaders = part.getPartHeaders();
+		for (String header : partHeaders.keySet())
+			builder.append(header + ": " +partHeaders.get(header)+CR_LF); //$NON-NLS-1$
+		builder.append(CR_LF);
+		return builder.toString().getBytes(UTF8);
+	}
+	
+	/**
+	 * @return The exact length of the multipart body, or -1 if the length of a part is unknown.
+	 */
+	private long getContentLength(List<HttpPart> parts, List<byte[]> partHeaders, int separatorLength, int closingLength) {
+		long length = closingLength;
+		if (parts == null)
+			return length;
+		
+		for (int i = 0; i < parts.size(); i++) {
+			long partLength = parts.get(i).getPartLength();
+			if (partLength < 0)
+				return -1;
+			length += partHeaders.get(i).length + partLength + separatorLength;
+		}
+		return length;
+	}
 
-	private HttpResponse makeRequest(Method method, String url,
-			Map<String, String> headerProperties, String payload)
+	private HttpResponse makeRequest(final Method method, final String url,
+			final Map<String, String> headerProperties, final String payload)
+			throws IOException {
+		final boolean compress = payload != null && payload.length() >= MIN_COMPRESS_SIZE
+				&& (method == Method.POST || method == Method.PUT)
+				&& m_connectionManager.shouldCompress(new URL(url));
+		HttpResponse response = execute(method, url, headerProperties, new Request() {
+			@Override
+			public HttpResponse send() throws IOException {
+				return sendRequest(method, url, headerProperties, payload, compress);
+			}
+		});
+		if (compress && isCompressionRejected(response, url))
+			return makeRequest(method, url, headerProperties, payload);
+		return response;
+	}
+	
+	/**
+	 * Sends a request, retrying it as allowed by the {@link RetryPolicy}. Requests to a host whose
+	 * {@link CircuitBreaker} is open fail without being sent. A token rejected with a 401 is removed from the
+	 * {@link TokenValidityCache}.
+	 */
+	private HttpResponse execute(Method method, String url, Map<String, String> headerProperties, Request request) throws IOException {
+		HttpResponse response = execute(method, url, request);
+		if (headerProperties != null && response.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED)
+			TokenValidityCache.invalidate(headerProperties.get(AUTHORIZATION));
+		return response;
+	}
+	
+	private HttpResponse execute(Method method, String url, Request request) throws IOException {
+		CircuitBreaker breaker = m_connectionManager.getCircuitBreaker(new URL(url));
+		RetryPolicy policy = getRetryPolicy();
+		
+		for (int attempt = 1; ; attempt++) {
+			breaker.acquire();
+			HttpResponse response;
+			int status;
+			try {
+				response = request.send();
+				status = response.readResponseCode();
+			} catch (IOException e) {
+				breaker.failure();
+				if (attempt >= policy.getAttempts() || !policy.isRetryable(method, e))
+					throw e;
+				pause(policy.getDelay(attempt, null));
+				continue;
+			}
+			
+			if (status == HttpURLConnection.HTTP_BAD_GATEWAY || status == HttpURLConnection.HTTP_UNAVAILABLE
+					|| status == HttpURLConnection.HTTP_GATEWAY_TIMEOUT)
+				breaker.failure();
+			else
+				breaker.success();
+			
+			if (attempt >= policy.getAttempts() || !policy.isRetryable(method, status))
+				return response;
+			long delay = policy.getDelay(attempt, response);
+			if (delay < 0)
+				return response;
+			response.close();
+			pause(delay);
+		}
+	}
+	
+	/**
+	 * @return The policy for the current thread. Pool threads of the {@link AsyncExecutor} must not wait between
+	 * attempts, so requests sent from them fail fast and the caller schedules its next attempt instead.
+	 */
+	private RetryPolicy getRetryPolicy() {
+		return AsyncExecutor.isPoolThread() ? RetryPolicy.NONE : m_retryPolicy;
+	}
+	
+	private void pause(long millis) throws IOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+	
+	/**
+	 * A request that can be sent more than once.
+	 */
+	private interface Request {
+		HttpResponse send() throws IOException;
+	}
+	
+	private HttpResponse sendRequest(Method method, String url,
+			Map<String, String> headerProperties, String payload, boolean compress)
 			throws IOException {
 		HttpURLConnection conn = makeConnection(url, method, headerProperties);
 
 		// Write payload
 		if (payload != null) {
 			conn.setDoOutput(true);
-			DataOutputStream writer = new DataOutputStream(
-					conn.getOutputStream());
+			if (compress)
+				conn.setRequestProperty(CONTENT_ENCODING, GZIP);
+			OutputStream out = conn.getOutputStream();
+			if (compress)
+				out = new GZIPOutputStream(out);
+			DataOutputStream writer = new DataOutputStream(out);
 			writer.writeBytes(payload);
 			writer.flush();
 			writer.close();
@@ -259,13 +582,41 @@ public class HttpClient {
 		return new HttpResponse(conn);
 	}
 	
+	/**
+	 * Checks whether the server rejected a compressed request body, and remembers the answer for the host.
+	 */
+	private boolean isCompressionRejected(HttpResponse response, String url) throws IOException {
+		int status = response.getResponseCode();
+		if (status == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+			m_connectionManager.setCompressionSupported(new URL(url), false);
+			response.close();
+			return true;
+		}
+		if (response.isSuccess())
+			m_connectionManager.setCompressionSupported(new URL(url), true);
+		return false;
+	}
+	
+	private boolean isCompressible(List<HttpPart> parts) {
+		if (parts == null || parts.isEmpty())
+			return false;
+		for (HttpPart part : parts) {
+			if (!part.isCompressible())
+				return false;
+		}
+		return true;
+	}
+	
 	private HttpURLConnection makeConnection(String url, Method method,
 			Map<String, String> headerProperties) throws IOException {
 		URL requestURL = new URL(url);
 		HttpURLConnection conn = null;
 		conn = (HttpURLConnection) requestURL.openConnection();
 		conn.setRequestMethod(method.name());
-		conn.setReadTimeout(0);
+		m_connectionManager.configure(conn);
+
+		// Responses are decompressed by HttpResponse while they are read.
+		conn.setRequestProperty(ACCEPT_ENCODING, GZIP + ", " + DEFLATE); //$NON-NLS-1$
 
 		// HTTP headers
 		if (headerProperties != null) {
@@ -284,11 +635,51 @@ public class HttpClient {
 		return totalSize;
 	}
 	
-	private void updateProgress() {
-		int progress = (int) ((float)m_uploadedMultipartLength/m_totalMultipartLength*100);
+	private void updateProgress(long uploadedLength, long totalLength) {
+		int progress = totalLength <= 0 ? 100 : (int) ((float)uploadedLength/totalLength*100);
 		m_progressAdapter.setProgress(progress);
 	}
 	
+	/**
+	 * Reports upload progress at most once per percent and once per interval, so that large uploads
+	 * are not slowed down by progress output.
+	 */
+	private class UploadProgress {
+		private static final long INTERVAL = 250;
+		
+		private long m_total;
+		private long m_uploaded;
+		private int m_reported = -1;
+		private long m_reportedAt;
+		
+		UploadProgress(long total) {
+			m_total = total;
+			report();
+		}
+		
+		void add(long bytes) {
+			m_uploaded += bytes;
+			int percentage = getPercentage();
+			if (percentage != m_reported && System.currentTimeMillis() - m_reportedAt >= INTERVAL)
+				report();
+		}
+		
+		void done() {
+			if (getPercentage() != m_reported)
+				report();
+		}
+		
+		private int getPercentage() {
+			return m_total <= 0 ? 100 : (int) (m_uploaded * 100 / m_total);
+		}
+		
+		private void report() {
+			m_reported = getPercentage();
+			m_reportedAt = System.currentTimeMillis();
+			updateProgress(m_uploaded, m_total);
+		}
+	}
+	
 	private String buildQueryString(Map<String, String> params) throws UnsupportedEncodingException {
 	    StringBuilder result = new StringBuilder();
 	    boolean first = true;
@@ -0,0 +1,270 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Shared, thread-safe transport settings for {@link HttpClient}.
+ * <p>
+ * Connections are pooled by the JRE keep-alive cache, which keeps up to {@code http.maxConnections} idle
+ * connections per host and evicts them once the server's keep-alive timeout has elapsed. Every https connection
+ * is created through a single socket factory so that pooled connections can be reused and TLS sessions can be
+ * resumed. The counters exposed by this class can be used to measure how often that happens.
+ * <p>
+ * Request bodies can optionally be sent gzip compressed, either by calling {@link #setRequestCompression(boolean)}
+ * or by setting the "RequestCompression" system property to true. A host that answers a compressed request with
+ * 415 (Unsupported Media Type) is remembered, and is sent uncompressed requests from then on.
+ */
+public final class HttpConnectionManager {
+
+	private static final String KEEP_ALIVE = "http.keepAlive"; //$NON-NLS-1$
+	private static final String MAX_CONNECTIONS = "http.maxConnections"; //$NON-NLS-1$
+	private static final int DEFAULT_MAX_CONNECTIONS = 10;
+	private static final int DEFAULT_CONNECT_TIMEOUT = 60000;
+	private static final String REQUEST_COMPRESSION = "RequestCompression"; //$NON-NLS-1$
+
+	private static final HttpConnectionManager DEFAULT = new HttpConnectionManager();
+
+	static {
+		// Must be set before the first connection is opened for the JRE to pick it up.
+		if(System.getProperty(KEEP_ALIVE) == null)
+			System.setProperty(KEEP_ALIVE, Boolean.toString(true));
+		if(System.getProperty(MAX_CONNECTIONS) == null)
+			System.setProperty(MAX_CONNECTIONS, Integer.toString(DEFAULT_MAX_CONNECTIONS));
+	}
+
+	private final AtomicLong m_requests = new AtomicLong();
+	private final AtomicLong m_secureRequests = new AtomicLong();
+	private final AtomicLong m_connections = new AtomicLong();
+	private final AtomicLong m_handshakes = new AtomicLong();
+	private final AtomicLong m_resumedSessions = new AtomicLong();
+	private final SSLSocketFactory m_socketFactory = new CountingSocketFactory();
+	private volatile int m_connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private volatile int m_readTimeout = 0;
+	private volatile boolean m_requestCompression = Boolean.getBoolean(REQUEST_COMPRESSION);
+	private final Map<String, Boolean> m_compressionSupport = new ConcurrentHashMap<String, Boolean>();
+	private final ConcurrentHashMap<String, CircuitBreaker> m_circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	/**
+	 * Gets the manager shared by all clients in this JVM.
+	 *
+	 * @return The shared {@link HttpConnectionManager}.
+	 */
+	public static HttpConnectionManager getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Sets the timeout, in milliseconds, used when opening new connections. 0 means no timeout.
+	 *
+	 * @param timeout The connect timeout.
+	 */
+	public void setConnectTimeout(int timeout) {
+		m_connectTimeout = timeout;
+	}
+
+	/**
+	 * Sets the timeout, in milliseconds, used when reading from a connection. 0 means no timeout.
+	 *
+	 * @param timeout The read timeout.
+	 */
+	public void setReadTimeout(int timeout) {
+		m_readTimeout = timeout;
+	}
+
+	/**
+	 * Enables or disables gzip compression of request bodies.
+	 *
+	 * @param compress True to compress request bodies for hosts that accept them.
+	 */
+	public void setRequestCompression(boolean compress) {
+		m_requestCompression = compress;
+	}
+
+	/**
+	 * Answers whether request bodies sent to the given url should be compressed.
+	 *
+	 * @param url The request url.
+	 * @return True if compression is enabled and the host has not rejected compressed requests.
+	 */
+	boolean shouldCompress(URL url) {
+		return m_requestCompression && !Boolean.FALSE.equals(m_compressionSupport.get(getHostKey(url)));
+	}
+
+	/**
+	 * Records whether a host accepts compressed request bodies.
+	 *
+	 * @param url The request url.
+	 * @param supported False if the host rejected a compressed request.
+	 */
+	void setCompressionSupported(URL url, boolean supported) {
+		m_compressionSupport.put(getHostKey(url), supported);
+	}
+
+	/**
+	 * Gets the {@link CircuitBreaker} that guards requests to the host of the given url.
+	 *
+	 * @param url The request url.
+	 * @return The {@link CircuitBreaker} for the host.
+	 */
+	public CircuitBreaker getCircuitBreaker(URL url) {
+		String key = getHostKey(url);
+		CircuitBreaker breaker = m_circuitBreakers.get(key);
+		if(breaker == null) {
+			CircuitBreaker existing = m_circuitBreakers.putIfAbsent(key, breaker = new CircuitBreaker(key));
+			if(existing != null)
+				breaker = existing;
+		}
+		return breaker;
+	}
+
+	private static String getHostKey(URL url) {
+		return url.getProtocol() + "://" + url.getHost() + ':' + url.getPort(); //$NON-NLS-1$
+	}
+
+	/**
+	 * The number of requests issued through this manager.
+	 *
+	 * @return The request count.
+	 */
+	public long getRequestCount() {
+		return m_requests.get();
+	}
+
+	/**
+	 * The number of new https connections opened.
+	 *
+	 * @return The connection count.
+	 */
+	public long getConnectionCount() {
+		return m_connections.get();
+	}
+
+	/**
+	 * The number of https requests that were served by an already open, pooled connection. Plain http requests are
+	 * not counted, since their connections are not tracked.
+	 *
+	 * @return The reused connection count.
+	 */
+	public long getReusedConnectionCount() {
+		return Math.max(0, m_secureRequests.get() - m_connections.get());
+	}
+
+	/**
+	 * The number of completed TLS handshakes.
+	 *
+	 * @return The handshake count.
+	 */
+	public long getHandshakeCount() {
+		return m_handshakes.get();
+	}
+
+	/**
+	 * The number of TLS handshakes that resumed an existing session rather than negotiating a new one.
+	 *
+	 * @return The resumed session count.
+	 */
+	public long getResumedSessionCount() {
+		return m_resumedSessions.get();
+	}
+
+	/**
+	 * Applies the shared settings to a new connection.
+	 *
+	 * @param conn The connection to configure.
+	 */
+	void configure(HttpURLConnection conn) {
+		m_requests.incrementAndGet();
+		conn.setConnectTimeout(m_connectTimeout);
+		conn.setReadTimeout(m_readTimeout);
+		if(conn instanceof HttpsURLConnection) {
+			m_secureRequests.incrementAndGet();
+			((HttpsURLConnection)conn).setSSLSocketFactory(m_socketFactory);
+		}
+	}
+
+	/**
+	 * Delegates to the JRE default factory, which owns the TLS session cache, and records every socket it creates.
+	 * A single instance is used for all connections because the keep-alive cache only reuses a connection
+	 * that was created by the same factory.
+	 */
+	private class CountingSocketFactory extends SSLSocketFactory {
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return getDelegate().getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return getDelegate().getSupportedCipherSuites();
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return track(getDelegate().createSocket());
+		}
+
+		@Override
+		public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+			return track(getDelegate().createSocket(s, host, port, autoClose));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			return track(getDelegate().createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+			return track(getDelegate().createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException {
+			return track(getDelegate().createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+			return track(getDelegate().createSocket(address, port, localAddress, localPort));
+		}
+
+		private SSLSocketFactory getDelegate() {
+			return HttpsURLConnection.getDefaultSSLSocketFactory();
+		}
+
+		private Socket track(Socket socket) {
+			m_connections.incrementAndGet();
+			if(socket instanceof SSLSocket) {
+				final long created = System.currentTimeMillis();
+				((SSLSocket)socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+					@Override
+					public void handshakeCompleted(HandshakeCompletedEvent event) {
+						m_handshakes.incrementAndGet();
+						if(event.getSession().getCreationTime() < created)
+							m_resumedSessions.incrementAndGet();
+					}
+				});
+			}
+			return socket;
+		}
+	}
+}
@@ -21,8 +21,14 @@ public class HttpPart {
 	private static final String CONTENT_LENGTH = "Content-Length"; //$NON-NLS-1$
 	private long m_totalPartLength;
 	
+	private static final String[] COMPRESSED_EXTENSIONS = {
+		".zip", ".irx", ".gz", ".tgz", ".jar", ".war", ".ear", ".apk", ".ipa", ".7z" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+	};
+	
 	private Map<String, String> m_partHeaders;
 	private InputStream m_bodyStream;
+	private File m_file;
+	private byte[] m_bytes;
 	
 	private HttpPart() {
 		m_partHeaders = new HashMap<String, String>();
@@ -38,9 +44,11 @@ public class HttpPart {
 	public HttpPart(String name, String value) {
 		this();
 		m_partHeaders.put(CONTENT_DISPOSITION, "form-data; name=\"" + name + "\""); //$NON-NLS-1$ //$NON-NLS-2$
-		m_partHeaders.put(CONTENT_LENGTH, String.valueOf(value.length()));
-		m_bodyStream = new ByteArrayInputStream(value.getBytes());
-		m_totalPartLength = value.getBytes().length;
+		byte[] bytes = value.getBytes();
+		m_partHeaders.put(CONTENT_LENGTH, String.valueOf(bytes.length));
+		m_bodyStream = new ByteArrayInputStream(bytes);
+		m_bytes = bytes;
+		m_totalPartLength = bytes.length;
 	}
 	
 	/**
@@ -59,6 +67,7 @@ public class HttpPart {
 		m_partHeaders.put(CONTENT_TYPE, contentType);
 		m_partHeaders.put(CONTENT_LENGTH, String.valueOf(file.length()));
     	m_bodyStream = new FileInputStream(file);
+    	m_file = file;
     	m_totalPartLength = file.length();
 	}
 	
@@ -90,6 +99,37 @@ public class HttpPart {
 		return m_bodyStream;
 	}
 	
+	/**
+	 * Opens the body of this part for sending. The first call returns the stream opened when the part was
+	 * created, later calls open the body again so that a request can be resent.
+	 * 
+	 * @return A new InputStream of this part's body.
+	 * @throws IOException If the body could not be opened.
+	 */
+	InputStream openPartBodyInputStream() throws IOException {
+		InputStream stream = m_bodyStream;
+		m_bodyStream = null;
+		if (stream != null)
+			return stream;
+		return m_file != null ? new FileInputStream(m_file) : new ByteArrayInputStream(m_bytes);
+	}
+	
+	/**
+	 * Answers whether compressing this part is likely to reduce its size.
+	 * 
+	 * @return False if the part is a file in a format that is already compressed.
+	 */
+	boolean isCompressible() {
+		if (m_file == null)
+			return true;
+		String name = m_file.getName().toLowerCase();
+		for (String extension : COMPRESSED_EXTENSIONS) {
+			if (name.endsWith(extension))
+				return false;
+		}
+		return true;
+	}
+	
 	/**
 	 * Return the total byte size of this part.
 	 *  
@@ -6,15 +6,28 @@
 
 package com.hcl.appscan.sdk.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.wink.json4j.JSON;
 import org.apache.wink.json4j.JSONArtifact;
@@ -23,9 +36,16 @@ import org.apache.wink.json4j.JSONException;
 public class HttpResponse {
 
 	private static final int READ_SIZE = 16384;
+	private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+	private static final String TEMP_SUFFIX = ".download"; //$NON-NLS-1$
+	private static final String GZIP = "gzip"; //$NON-NLS-1$
+	private static final String X_GZIP = "x-gzip"; //$NON-NLS-1$
+	private static final String DEFLATE = "deflate"; //$NON-NLS-1$
 	
 	private byte[] m_content = null;
 	private HttpURLConnection m_connection;
+	private long m_transferredBytes;
+	private long m_transferNanos;
 
 	public HttpResponse(HttpURLConnection conn) {
 		m_connection = conn;
@@ -39,6 +59,16 @@ public class HttpResponse {
 		}
 	}
 	
+	/**
+	 * Waits for the response status, reporting connection failures instead of returning -1.
+	 * 
+	 * @return The response code.
+	 * @throws IOException If the request could not be completed.
+	 */
+	int readResponseCode() throws IOException {
+		return m_connection.getResponseCode();
+	}
+	
 	public Map<String, List<String>> getResponseHeaders() {
 		return m_connection.getHeaderFields();
 	}
@@ -46,7 +76,16 @@ public class HttpResponse {
 	public String getHeaderField(String name) {
 		Map<String, List<String>> responseHeaders = getResponseHeaders();
 		List<String> values = responseHeaders.containsKey(name) ? responseHeaders.get(name) : null;
-		return (values==null ? null : values.get(0));
+		if (values == null) {
+			// Header names are case insensitive, and servers differ in how they write them.
+			for (Map.Entry<String, List<String>> entry : responseHeaders.entrySet()) {
+				if (name.equalsIgnoreCase(entry.getKey())) {
+					values = entry.getValue();
+					break;
+				}
+			}
+		}
+		return (values==null || values.isEmpty() ? null : values.get(0));
 	}
 
 	/**
@@ -78,20 +117,78 @@ public class HttpResponse {
 	public JSONArtifact getResponseBodyAsJSON() throws IOException, JSONException {
 		if (!hasResponseBody())
 			return null;
-		return JSON.parse(getResponseBodyAsString());
+		return JSON.parse(new InputStreamReader(new ByteArrayInputStream(m_content), "UTF-8")); //$NON-NLS-1$
+	}
+	
+	/**
+	 * Gets a streaming reader over the response body. The body is read directly from the connection rather than
+	 * being buffered, so it can only be consumed once. Returns null if the response has no content.
+	 * The caller is responsible for closing the reader.
+	 * 
+	 * @return A {@link JSONReader} over the response body.
+	 * @throws IOException
+	 */
+	public JSONReader getResponseBodyAsJSONReader() throws IOException {
+		InputStream is = m_content == null ? openResponseBody() : new ByteArrayInputStream(m_content);
+		m_content = new byte[0];
+		if (is == null)
+			return null;
+		return new JSONReader(new InputStreamReader(is, "UTF-8")); //$NON-NLS-1$
 	}
 
 	/**
-	 * Outputs the byte array representation of response body into a destination
-	 * file. If the response body is empty, this method has no effect.
+	 * Outputs the response body into a destination file. The body is transferred from the connection straight into
+	 * a temporary file, which is synced to disk and then renamed to the destination, so the destination never
+	 * contains a partial download.
 	 * 
 	 * @param destination The destination file for the content.
 	 * @throws IOException
 	 */
 	public void getResponseBodyAsFile(File destination) throws IOException {
-		FileOutputStream out = new FileOutputStream(destination, false);
-		getHttpResponseBody(out);
-		out.close();
+		destination = destination.getAbsoluteFile();
+		File temp = new File(destination.getParentFile(), destination.getName() + TEMP_SUFFIX);
+		
+		try {
+			writeResponseBody(temp, false);
+		}
+		catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		moveAtomically(temp, destination);
+	}
+	
+	/**
+	 * The number of bytes written by the last call to {@link #getResponseBodyAsFile(File)}.
+	 * 
+	 * @return The number of bytes transferred.
+	 */
+	public long getTransferredBytes() {
+		return m_transferredBytes;
+	}
+	
+	/**
+	 * The throughput of the last call to {@link #getResponseBodyAsFile(File)}.
+	 * 
+	 * @return The transfer rate in bytes per second.
+	 */
+	public long getTransferRate() {
+		return m_transferNanos == 0 ? 0 : m_transferredBytes * 1000000000L / m_transferNanos;
+	}
+	
+	/**
+	 * Discards any unread response body so the underlying connection can be returned to the keep-alive pool.
+	 * Responses whose body has already been read do not need to be closed.
+	 */
+	public void close() {
+		if(m_content != null)
+			return;
+		try {
+			getHttpResponseBody(null);
+		} catch (IOException e) {
+			m_connection.disconnect();
+		}
+		m_content = new byte[0];
 	}
 	
 	/**
@@ -112,20 +209,143 @@ public class HttpResponse {
 		return (m_content != null);
 	}
 	
-	private void getHttpResponseBody(OutputStream out) throws IOException {
+	/**
+	 * Answers whether this is a partial response that starts at the given offset.
+	 * 
+	 * @param offset The expected offset of the first byte.
+	 * @return True if the Content-Range of the response starts at the offset.
+	 */
+	boolean isRangeFrom(long offset) {
+		String range = getHeaderField("Content-Range"); //$NON-NLS-1$
+		return getResponseCode() == HttpURLConnection.HTTP_PARTIAL && range != null
+				&& range.trim().startsWith("bytes " + offset + "-"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	/**
+	 * Writes the response body to a file and syncs it to disk.
+	 * 
+	 * @param file The file to write.
+	 * @param append True to add to the end of the file, false to replace its content.
+	 * @throws IOException
+	 */
+	void writeResponseBody(File file, boolean append) throws IOException {
+		boolean streamed = m_content == null;
+		InputStream is = streamed ? openResponseBody() : new ByteArrayInputStream(m_content);
+		m_content = new byte[0];
+		
+		RandomAccessFile out = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+		try {
+			long position = append ? out.length() : 0;
+			out.setLength(position);
+			if (is != null)
+				transfer(Channels.newChannel(is), out.getChannel(), position);
+			out.getChannel().force(true);
+			// HttpURLConnection reports a connection closed early as the end of the body.
+			long length = m_connection.getContentLengthLong();
+			if (streamed && is != null && length >= 0 && m_connection.getContentEncoding() == null && m_transferredBytes != length)
+				throw new EOFException(file.getAbsolutePath());
+		}
+		finally {
+			out.close();
+			if (is != null)
+				is.close();
+		}
+	}
+	
+	/**
+	 * Renames a file, replacing the target. The rename is atomic where the file system supports it.
+	 * 
+	 * @param source The file to move.
+	 * @param target The new location.
+	 * @throws IOException
+	 */
+	static void moveAtomically(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	private void transfer(ReadableByteChannel in, FileChannel out, long position) throws IOException {
+		long start = System.nanoTime();
+		long initial = position;
+		long count;
+		
+		try {
+			while ((count = out.transferFrom(in, position, TRANSFER_SIZE)) > 0)
+				position += count;
+		}
+		finally {
+			m_transferredBytes = position - initial;
+			m_transferNanos = System.nanoTime() - start;
+		}
+	}
+	
+	private InputStream openResponseBody() throws IOException {
 		int responseCode = getResponseCode();
+		if (responseCode == HttpURLConnection.HTTP_NO_CONTENT)
+			return null;
+		
 		boolean error = (responseCode < HttpURLConnection.HTTP_OK || responseCode >= HttpURLConnection.HTTP_MULT_CHOICE);
+		InputStream is = error ? m_connection.getErrorStream() : m_connection.getInputStream();
+		return is == null ? null : decode(is, m_connection.getContentEncoding());
+	}
 	
-		if (responseCode != HttpURLConnection.HTTP_NO_CONTENT) {
-			InputStream is = error ? m_connection.getErrorStream() : m_connection.getInputStream();
+	/**
+	 * Wraps the body in a decompressing stream if the server compressed it.
+	 */
+	private static InputStream decode(InputStream is, String encoding) throws IOException {
+		if (encoding == null)
+			return is;
+		encoding = encoding.trim().toLowerCase();
+		
+		try {
+			if (encoding.equals(GZIP) || encoding.equals(X_GZIP))
+				return new GZIPInputStream(is, READ_SIZE);
+		} catch (EOFException e) {
+			// An empty body, as sent for a HEAD request or a 304.
+			is.close();
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		
+		if (encoding.equals(DEFLATE)) {
+			// Some servers send raw deflate data instead of the zlib format the specification calls for.
+			PushbackInputStream pushback = new PushbackInputStream(is, 2);
+			byte[] header = new byte[2];
+			int read = pushback.read(header);
+			if (read <= 0)
+				return pushback;
+			pushback.unread(header, 0, read);
+			boolean zlib = read == 2 && (header[0] & 0x0F) == 8 && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+			final Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(pushback, inflater, READ_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						inflater.end();
+					}
+				}
+			};
+		}
+		return is;
+	}
+	
+	private void getHttpResponseBody(OutputStream out) throws IOException {
+		InputStream is = openResponseBody();
+		if (is != null) {
 			byte[] buf = new byte[READ_SIZE];
 			int result = 0;
 			
 			while((result = is.read(buf, 0, buf.length)) > 0) {
-				out.write(buf, 0, result);
+				if (out != null)
+					out.write(buf, 0, result);
 			}
 			
-			out.flush();
+			if (out != null)
+				out.flush();
 			is.close();
 		}
 	}
@@ -0,0 +1,488 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+
+import org.apache.wink.json4j.JSONArray;
+import org.apache.wink.json4j.JSONException;
+import org.apache.wink.json4j.JSONObject;
+
+import com.hcl.appscan.sdk.Messages;
+
+/**
+ * A pull-style reader for JSON documents. Values are read one token at a time, so large documents can be processed
+ * without holding the whole document in memory.
+ */
+public class JSONReader implements Closeable {
+
+	public enum Token {
+		BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT;
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final String ERROR_SYNTAX = "error.json.syntax"; //$NON-NLS-1$
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+
+	private Reader m_reader;
+	private char[] m_buffer = new char[BUFFER_SIZE];
+	private int m_pos;
+	private int m_limit;
+	private long m_consumed;
+
+	private int[] m_stack = new int[32];
+	private int m_depth;
+	private Token m_peeked;
+
+	public JSONReader(Reader reader) {
+		m_reader = reader;
+		m_stack[m_depth++] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Gets the type of the next token without consuming it.
+	 *
+	 * @return The next {@link Token}.
+	 * @throws IOException
+	 * @throws JSONException If the document is malformed.
+	 */
+	public Token peek() throws IOException, JSONException {
+		if(m_peeked != null)
+			return m_peeked;
+
+		int c;
+		switch(m_stack[m_depth - 1]) {
+		case EMPTY_DOCUMENT:
+			m_stack[m_depth - 1] = NONEMPTY_DOCUMENT;
+			m_peeked = readValueToken();
+			break;
+		case NONEMPTY_DOCUMENT:
+			m_peeked = nextNonWhitespace() == -1 ? Token.END_DOCUMENT : syntaxError("EOF"); //$NON-NLS-1$
+			break;
+		case EMPTY_ARRAY:
+			m_stack[m_depth - 1] = NONEMPTY_ARRAY;
+			c = nextNonWhitespace();
+			if(c == ']')
+				m_peeked = Token.END_ARRAY;
+			else if(c == -1)
+				syntaxError("]"); //$NON-NLS-1$
+			else {
+				m_pos--;
+				m_peeked = readValueToken();
+			}
+			break;
+		case NONEMPTY_ARRAY:
+			c = nextNonWhitespace();
+			if(c == ']')
+				m_peeked = Token.END_ARRAY;
+			else if(c == ',')
+				m_peeked = readValueToken();
+			else
+				syntaxError(",]"); //$NON-NLS-1$
+			break;
+		case EMPTY_OBJECT:
+		case NONEMPTY_OBJECT:
+			c = nextNonWhitespace();
+			if(c == '}')
+				m_peeked = Token.END_OBJECT;
+			else {
+				if(m_stack[m_depth - 1] == NONEMPTY_OBJECT) {
+					if(c != ',')
+						syntaxError(",}"); //$NON-NLS-1$
+					c = nextNonWhitespace();
+				}
+				if(c != '"')
+					syntaxError("\""); //$NON-NLS-1$
+				m_peeked = Token.NAME;
+			}
+			break;
+		case DANGLING_NAME:
+			m_stack[m_depth - 1] = NONEMPTY_OBJECT;
+			m_peeked = readValueToken();
+			break;
+		default:
+			throw new IllegalStateException();
+		}
+		return m_peeked;
+	}
+
+	/**
+	 * Answers whether the current array or object has more elements.
+	 *
+	 * @return True if there is another element.
+	 * @throws IOException
+	 * @throws JSONException If the document is malformed.
+	 */
+	public boolean hasNext() throws IOException, JSONException {
+		Token token = peek();
+		return token != Token.END_ARRAY && token != Token.END_OBJECT && token != Token.END_DOCUMENT;
+	}
+
+	public void beginArray() throws IOException, JSONException {
+		expect(Token.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException, JSONException {
+		expect(Token.END_ARRAY);
+		m_depth--;
+	}
+
+	public void beginObject() throws IOException, JSONException {
+		expect(Token.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException, JSONException {
+		expect(Token.END_OBJECT);
+		m_depth--;
+	}
+
+	/**
+	 * Reads the name of the next field in the current object.
+	 *
+	 * @return The field name.
+	 * @throws IOException
+	 * @throws JSONException If the next token is not a name.
+	 */
+	public String nextName() throws IOException, JSONException {
+		expect(Token.NAME);
+		String name = readString();
+		if(nextNonWhitespace() != ':')
+			syntaxError(":"); //$NON-NLS-1$
+		m_stack[m_depth - 1] = DANGLING_NAME;
+		return name;
+	}
+
+	/**
+	 * Reads the next scalar value as a String. Numbers and booleans are returned in their literal form.
+	 *
+	 * @return The value, or null if the value is a JSON null.
+	 * @throws IOException
+	 * @throws JSONException If the next token is not a scalar value.
+	 */
+	public String nextString() throws IOException, JSONException {
+		Token token = peek();
+		m_peeked = null;
+		switch(token) {
+		case STRING:
+			return readString();
+		case NUMBER:
+			return readLiteral();
+		case BOOLEAN:
+			String literal = readLiteral();
+			if(!"true".equals(literal) && !"false".equals(literal)) //$NON-NLS-1$ //$NON-NLS-2$
+				syntaxError("true|false"); //$NON-NLS-1$
+			return literal;
+		case NULL:
+			if(!"null".equals(readLiteral())) //$NON-NLS-1$
+				syntaxError("null"); //$NON-NLS-1$
+			return null;
+		default:
+			m_peeked = token;
+			throw new JSONException(Messages.getMessage(ERROR_SYNTAX, Token.STRING, m_consumed + m_pos));
+		}
+	}
+
+	/**
+	 * Reads the next value as an int. A JSON null or empty string is returned as 0.
+	 *
+	 * @return The int value.
+	 * @throws IOException
+	 * @throws JSONException If the value is not a number.
+	 */
+	public int nextInt() throws IOException, JSONException {
+		return (int)nextLong();
+	}
+
+	/**
+	 * Reads the next value as a long. A JSON null or empty string is returned as 0.
+	 *
+	 * @return The long value.
+	 * @throws IOException
+	 * @throws JSONException If the value is not a number.
+	 */
+	public long nextLong() throws IOException, JSONException {
+		String value = nextString();
+		if(value == null || value.length() == 0)
+			return 0;
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			try {
+				return (long)Double.parseDouble(value);
+			} catch (NumberFormatException e2) {
+				throw new JSONException(Messages.getMessage(ERROR_SYNTAX, Token.NUMBER, m_consumed + m_pos));
+			}
+		}
+	}
+
+	/**
+	 * Reads the next value as a boolean.
+	 *
+	 * @return The boolean value.
+	 * @throws IOException
+	 * @throws JSONException If the value is not a scalar.
+	 */
+	public boolean nextBoolean() throws IOException, JSONException {
+		return Boolean.parseBoolean(nextString());
+	}
+
+	/**
+	 * Skips the next value, including any nested arrays or objects.
+	 *
+	 * @throws IOException
+	 * @throws JSONException If the document is malformed.
+	 */
+	public void skipValue() throws IOException, JSONException {
+		int depth = 0;
+		do {
+			switch(peek()) {
+			case BEGIN_ARRAY:
+				beginArray();
+				depth++;
+				break;
+			case BEGIN_OBJECT:
+				beginObject();
+				depth++;
+				break;
+			case END_ARRAY:
+				endArray();
+				depth--;
+				break;
+			case END_OBJECT:
+				endObject();
+				depth--;
+				break;
+			case NAME:
+				nextName();
+				break;
+			case END_DOCUMENT:
+				return;
+			default:
+				nextString();
+			}
+		} while(depth > 0);
+	}
+
+	/**
+	 * Reads the next object into memory. Useful for small elements of a large array.
+	 *
+	 * @return The {@link JSONObject}.
+	 * @throws IOException
+	 * @throws JSONException If the next value is not an object.
+	 */
+	public JSONObject nextObject() throws IOException, JSONException {
+		JSONObject object = new JSONObject();
+		beginObject();
+		while(hasNext()) {
+			String name = nextName();
+			object.put(name, nextValue());
+		}
+		endObject();
+		return object;
+	}
+
+	@Override
+	public void close() throws IOException {
+		m_peeked = null;
+		m_reader.close();
+	}
+
+	private Object nextValue() throws IOException, JSONException {
+		switch(peek()) {
+		case BEGIN_OBJECT:
+			return nextObject();
+		case BEGIN_ARRAY:
+			JSONArray array = new JSONArray();
+			beginArray();
+			while(hasNext())
+				array.add(nextValue());
+			endArray();
+			return array;
+		case NUMBER:
+			return toNumber(nextString());
+		case BOOLEAN:
+			return Boolean.valueOf(nextBoolean());
+		default:
+			return nextString();
+		}
+	}
+
+	private Number toNumber(String number) throws JSONException {
+		try {
+			if(number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+				// Integers beyond the range of a long keep their exact value.
+				BigInteger value = new BigInteger(number);
+				if(value.bitLength() < 32)
+					return Integer.valueOf(value.intValue());
+				if(value.bitLength() < 64)
+					return Long.valueOf(value.longValue());
+				return value;
+			}
+			return Double.valueOf(number);
+		} catch (NumberFormatException e) {
+			throw new JSONException(Messages.getMessage(ERROR_SYNTAX, Token.NUMBER, m_consumed + m_pos));
+		}
+	}
+
+	private void expect(Token expected) throws IOException, JSONException {
+		if(peek() != expected)
+			throw new JSONException(Messages.getMessage(ERROR_SYNTAX, expected, m_consumed + m_pos));
+		m_peeked = null;
+	}
+
+	private void push(int context) {
+		if(m_depth == m_stack.length) {
+			int[] stack = new int[m_depth * 2];
+			System.arraycopy(m_stack, 0, stack, 0, m_depth);
+			m_stack = stack;
+		}
+		m_stack[m_depth++] = context;
+	}
+
+	private Token readValueToken() throws IOException, JSONException {
+		int c = nextNonWhitespace();
+		switch(c) {
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+			m_pos--;
+			return Token.BOOLEAN;
+		case 'n':
+			m_pos--;
+			return Token.NULL;
+		default:
+			if(c == '-' || (c >= '0' && c <= '9')) {
+				m_pos--;
+				return Token.NUMBER;
+			}
+			return syntaxError("value"); //$NON-NLS-1$
+		}
+	}
+
+	private String readString() throws IOException, JSONException {
+		StringBuilder builder = new StringBuilder();
+		while(true) {
+			int start = m_pos;
+			while(m_pos < m_limit) {
+				char c = m_buffer[m_pos++];
+				if(c == '"') {
+					builder.append(m_buffer, start, m_pos - start - 1);
+					return builder.toString();
+				}
+				if(c == '\\') {
+					builder.append(m_buffer, start, m_pos - start - 1);
+					builder.append(readEscape());
+					start = m_pos;
+				}
+			}
+			builder.append(m_buffer, start, m_pos - start);
+			if(!fill())
+				syntaxError("\""); //$NON-NLS-1$
+		}
+	}
+
+	private char readEscape() throws IOException, JSONException {
+		int c = read();
+		switch(c) {
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int value = 0;
+			for(int i = 0; i < 4; i++) {
+				int digit = Character.digit(read(), 16);
+				if(digit < 0)
+					syntaxError("\\u"); //$NON-NLS-1$
+				value = (value << 4) + digit;
+			}
+			return (char)value;
+		case '"':
+		case '\\':
+		case '/':
+			return (char)c;
+		default:
+			syntaxError("\\"); //$NON-NLS-1$
+			return 0;
+		}
+	}
+
+	private String readLiteral() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		while(true) {
+			int start = m_pos;
+			while(m_pos < m_limit) {
+				char c = m_buffer[m_pos];
+				if(c == ',' || c == ']' || c == '}' || c == ':' || Character.isWhitespace(c)) {
+					builder.append(m_buffer, start, m_pos - start);
+					return builder.toString();
+				}
+				m_pos++;
+			}
+			builder.append(m_buffer, start, m_pos - start);
+			if(!fill())
+				return builder.toString();
+		}
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while(c != -1 && Character.isWhitespace(c));
+		return c;
+	}
+
+	private int read() throws IOException {
+		if(m_pos == m_limit && !fill())
+			return -1;
+		return m_buffer[m_pos++];
+	}
+
+	/*
+	 * Refills the buffer, keeping the last character so that a single character can always be pushed back.
+	 */
+	private boolean fill() throws IOException {
+		int keep = m_limit > 0 ? 1 : 0;
+		if(keep > 0)
+			m_buffer[0] = m_buffer[m_limit - 1];
+		m_consumed += m_limit - keep;
+		m_pos = keep;
+		m_limit = keep;
+		int read = m_reader.read(m_buffer, keep, m_buffer.length - keep);
+		if(read <= 0)
+			return false;
+		m_limit += read;
+		return true;
+	}
+
+	private Token syntaxError(String expected) throws JSONException {
+		throw new JSONException(Messages.getMessage(ERROR_SYNTAX, expected, m_consumed + m_pos));
+	}
+}
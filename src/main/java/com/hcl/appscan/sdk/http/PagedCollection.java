@@ -0,0 +1,296 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.wink.json4j.JSONException;
+
+import com.hcl.appscan.sdk.Messages;
+import com.hcl.appscan.sdk.auth.IAuthenticationProvider;
+import com.hcl.appscan.sdk.concurrent.AsyncExecutor;
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
+import com.hcl.appscan.sdk.error.HttpException;
+
+/**
+ * A collection on the service that is read one page at a time as it is iterated. Each page is requested with a
+ * "range: items=first-last" header and parsed from the response stream, and the next page is requested in the
+ * background while the current one is being consumed. Only two pages are ever held in memory.
+ * <p>
+ * The service may return fewer items than requested. The next page starts after the items received, and the
+ * iteration ends at an empty page, a 416 response, or once the "Content-Range" of a page reaches its total. A
+ * service that sends no "Content-Range" is assumed to ignore the range, so a page of any other size than requested
+ * is then the last one.
+ * <p>
+ * The iterator throws a {@link PageException} if a page cannot be read. An iterator that is abandoned before the
+ * end should be closed, so that the request for the next page is cancelled and the page released.
+ *
+ * @param <T> The type of the elements.
+ */
+public class PagedCollection<T> implements Iterable<T> {
+
+	public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("CollectionPageSize", 500); //$NON-NLS-1$
+
+	private static final String RANGE = "range"; //$NON-NLS-1$
+	private static final String CONTENT_RANGE = "Content-Range"; //$NON-NLS-1$
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	/**
+	 * Reads one element of the collection.
+	 *
+	 * @param <T> The type of the element.
+	 */
+	public interface IElementReader<T> {
+		/**
+		 * Reads the next element from the array being parsed.
+		 *
+		 * @param reader The {@link JSONReader}, positioned at the start of the element.
+		 * @return The element, or null to leave it out.
+		 * @throws IOException
+		 * @throws JSONException
+		 */
+		T read(JSONReader reader) throws IOException, JSONException;
+	}
+
+	/**
+	 * Iterates over the collection.
+	 *
+	 * @param <T> The type of the elements.
+	 */
+	public interface IPageIterator<T> extends Iterator<T>, Closeable {
+		/**
+		 * Stops the iteration, cancelling the request for the next page.
+		 */
+		@Override
+		void close();
+	}
+
+	private HttpClient m_client;
+	private IAuthenticationProvider m_authProvider;
+	private String m_url;
+	private int m_pageSize;
+	private IElementReader<T> m_elementReader;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param client The {@link HttpClient} used to request the pages.
+	 * @param authProvider The {@link IAuthenticationProvider} used to authorize the requests.
+	 * @param url The url of the collection, including any query string.
+	 * @param pageSize The number of elements requested at a time.
+	 * @param elementReader Reads each element.
+	 */
+	public PagedCollection(HttpClient client, IAuthenticationProvider authProvider, String url, int pageSize, IElementReader<T> elementReader) {
+		m_client = client;
+		m_authProvider = authProvider;
+		m_url = url;
+		m_pageSize = Math.max(1, pageSize);
+		m_elementReader = elementReader;
+	}
+
+	@Override
+	public IPageIterator<T> iterator() {
+		return new PageIterator();
+	}
+
+	/**
+	 * Asks the service how many elements the collection has, by requesting only the first one.
+	 *
+	 * @return The number of elements, or -1 if the service did not say.
+	 * @throws IOException If the request failed.
+	 * @throws JSONException If the response could not be parsed.
+	 */
+	public long getTotal() throws IOException, JSONException {
+		Page<T> page = fetch(0, 1);
+		if(page.m_total >= 0)
+			return page.m_total;
+		return page.m_count == 0 ? 0 : -1;
+	}
+
+	private Page<T> fetch(long first) throws IOException, JSONException {
+		return fetch(first, m_pageSize);
+	}
+
+	private Page<T> fetch(long first, int size) throws IOException, JSONException {
+		Map<String, String> headers = m_authProvider.getAuthorizationHeader(true);
+		headers.put(RANGE, "items=" + first + "-" + (first + size - 1)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		HttpResponse response = m_client.get(m_url, headers, null);
+		int status = response.getResponseCode();
+		if(status == HTTP_RANGE_NOT_SATISFIABLE) {
+			response.close();
+			return new Page<T>(Collections.<T>emptyList(), 0, null);
+		}
+		if(!response.isSuccess()) {
+			String reason = response.getResponseBodyAsString();
+			throw new HttpException(status, reason == null ? Messages.getMessage("message.unknown") : reason); //$NON-NLS-1$
+		}
+
+		String contentRange = response.getHeaderField(CONTENT_RANGE);
+		List<T> elements = new ArrayList<T>(size);
+		int count = 0;
+		JSONReader reader = response.getResponseBodyAsJSONReader();
+		if(reader != null) {
+			try {
+				reader.beginArray();
+				while(reader.hasNext()) {
+					count++;
+					T element = m_elementReader.read(reader);
+					if(element != null)
+						elements.add(element);
+				}
+				reader.endArray();
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return new Page<T>(elements, count, contentRange);
+	}
+
+	private static class Page<T> {
+		private final List<T> m_elements;
+		private final int m_count;
+		private final boolean m_ranged;
+		private final long m_last;
+		private final long m_total;
+
+		/**
+		 * @param contentRange The "Content-Range: items first-last/total" header, or null if there was none. The
+		 * total is "*" if the service does not know it.
+		 */
+		Page(List<T> elements, int count, String contentRange) {
+			m_elements = elements;
+			m_count = count;
+			m_ranged = contentRange != null;
+			long last = -1;
+			long total = -1;
+			if(contentRange != null) {
+				int dash = contentRange.indexOf('-');
+				int slash = contentRange.lastIndexOf('/');
+				if(slash >= 0) {
+					last = parse(dash < 0 || dash > slash ? null : contentRange.substring(dash + 1, slash));
+					total = parse(contentRange.substring(slash + 1));
+				}
+			}
+			m_last = last;
+			m_total = total;
+		}
+
+		private static long parse(String value) {
+			try {
+				return value == null ? -1 : Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		/**
+		 * @param requested The number of elements that were requested.
+		 * @return True if no page follows this one.
+		 */
+		boolean isLast(int requested) {
+			if(m_count == 0)
+				return true;
+			if(!m_ranged) {
+				// Either the end, or the server ignored the range and sent the whole collection.
+				return m_count != requested;
+			}
+			return m_total >= 0 && m_last >= 0 && m_last + 1 >= m_total;
+		}
+	}
+
+	private class PageIterator implements IPageIterator<T> {
+		private Iterator<T> m_current = Collections.<T>emptyList().iterator();
+		private AsyncResult<Page<T>> m_next;
+		private long m_nextFirst;
+		private boolean m_last;
+
+		@Override
+		public boolean hasNext() {
+			while(!m_current.hasNext()) {
+				if(m_last)
+					return false;
+				Page<T> page = takeNextPage();
+				// The service may send fewer elements than requested, so continue after those that were received.
+				m_nextFirst += page.m_count;
+				m_last = page.isLast(m_pageSize);
+				if(!m_last)
+					m_next = prefetch(m_nextFirst);
+				m_current = page.m_elements.iterator();
+			}
+			return true;
+		}
+
+		@Override
+		public T next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			return m_current.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			if(m_next != null)
+				m_next.cancel(false);
+			m_next = null;
+			m_last = true;
+			m_current = Collections.<T>emptyList().iterator();
+		}
+
+		private Page<T> takeNextPage() {
+			try {
+				if(m_next == null)
+					return fetch(m_nextFirst);
+				return m_next.get();
+			} catch (ExecutionException e) {
+				throw new PageException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new PageException(e);
+			} catch (IOException | JSONException e) {
+				throw new PageException(e);
+			} finally {
+				m_next = null;
+			}
+		}
+
+		private AsyncResult<Page<T>> prefetch(final long first) {
+			return AsyncExecutor.supply(new Callable<Page<T>>() {
+				@Override
+				public Page<T> call() throws IOException, JSONException {
+					return fetch(first);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Thrown by the iterator when a page could not be read.
+	 */
+	public static class PageException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public PageException(Throwable cause) {
+			super(cause.getLocalizedMessage(), cause);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Tracks a download that may be interrupted and resumed later. The content is written to a ".part" file next to
+ * the destination, and a ".part.info" sidecar records the url, the validators (ETag or Last-Modified) of the
+ * content and the offset reached, so that a later request can ask for the remaining range only.
+ */
+class PartialDownload {
+
+	private static final String PART = ".part"; //$NON-NLS-1$
+	private static final String INFO = ".info"; //$NON-NLS-1$
+	private static final String URL = "url"; //$NON-NLS-1$
+	private static final String ETAG = "etag"; //$NON-NLS-1$
+	private static final String LAST_MODIFIED = "lastModified"; //$NON-NLS-1$
+	private static final String OFFSET = "offset"; //$NON-NLS-1$
+
+	private String m_url;
+	private File m_partFile;
+	private File m_infoFile;
+	private Properties m_info;
+
+	PartialDownload(String url, File destination) {
+		destination = destination.getAbsoluteFile();
+		m_url = url;
+		m_partFile = new File(destination.getParentFile(), destination.getName() + PART);
+		m_infoFile = new File(destination.getParentFile(), destination.getName() + PART + INFO);
+		m_info = load();
+	}
+
+	/**
+	 * @return The file that receives the content.
+	 */
+	File getPartFile() {
+		return m_partFile;
+	}
+
+	/**
+	 * @return The number of bytes already downloaded, or 0 if the download cannot be resumed.
+	 */
+	long getOffset() {
+		if(getValidator() == null || !m_url.equals(m_info.getProperty(URL)) || !m_partFile.isFile())
+			return 0;
+		long length = m_partFile.length();
+		String offset = m_info.getProperty(OFFSET);
+		if(offset == null)
+			// The process stopped before it could record the offset. What was written is still a prefix of the content.
+			return length;
+		try {
+			// A part file of another length was changed after the transfer broke off.
+			return Long.parseLong(offset) == length ? length : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return The value for an If-Range header, or null if none was recorded.
+	 */
+	String getValidator() {
+		String etag = m_info.getProperty(ETAG);
+		return etag != null ? etag : m_info.getProperty(LAST_MODIFIED);
+	}
+
+	/**
+	 * Records the validators of a response that is about to be written to the part file.
+	 *
+	 * @param response The response.
+	 * @throws IOException If the sidecar could not be written.
+	 */
+	void start(HttpResponse response) throws IOException {
+		m_info.clear();
+		m_info.setProperty(URL, m_url);
+		String etag = response.getHeaderField("ETag"); //$NON-NLS-1$
+		String lastModified = response.getHeaderField("Last-Modified"); //$NON-NLS-1$
+		if(etag != null && !etag.startsWith("W/")) //$NON-NLS-1$
+			m_info.setProperty(ETAG, etag);
+		if(lastModified != null)
+			m_info.setProperty(LAST_MODIFIED, lastModified);
+		save();
+	}
+
+	/**
+	 * Records how far the download got before it was interrupted.
+	 */
+	void interrupted() {
+		m_info.setProperty(OFFSET, Long.toString(m_partFile.length()));
+		try {
+			save();
+		} catch (IOException e) {
+			reset();
+		}
+	}
+
+	/**
+	 * Discards any previously downloaded content.
+	 */
+	void reset() {
+		m_partFile.delete();
+		m_infoFile.delete();
+		m_info.clear();
+	}
+
+	/**
+	 * Removes the sidecar once the part file has been moved to its destination.
+	 */
+	void complete() {
+		m_infoFile.delete();
+	}
+
+	private Properties load() {
+		Properties info = new Properties();
+		if(!m_infoFile.isFile())
+			return info;
+
+		InputStream in = null;
+		try {
+			in = new FileInputStream(m_infoFile);
+			info.load(in);
+		} catch (IOException e) {
+			info.clear();
+		} finally {
+			try {
+				if(in != null)
+					in.close();
+			} catch (IOException e) {
+			}
+		}
+		return info;
+	}
+
+	private void save() throws IOException {
+		OutputStream out = new FileOutputStream(m_infoFile);
+		try {
+			m_info.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads an InputStream on a background thread into a small set of reusable buffers, so that reading the next
+ * block overlaps with writing the current one.
+ */
+class ReadAhead implements Runnable {
+
+	static final int BUFFER_SIZE = 256 * 1024;
+	private static final int BUFFERS = 2;
+
+	/**
+	 * A block of data read from the stream.
+	 */
+	static final class Block {
+		final byte[] m_data;
+		int m_length;
+		IOException m_error;
+
+		Block(byte[] data) {
+			m_data = data;
+		}
+	}
+
+	// Neither the end marker nor an error carries data, so they get no buffer.
+	private static final Block END = new Block(null);
+
+	private InputStream m_input;
+	private BlockingQueue<Block> m_filled = new ArrayBlockingQueue<Block>(BUFFERS + 1);
+	private BlockingQueue<Block> m_empty = new ArrayBlockingQueue<Block>(BUFFERS);
+	private Thread m_thread;
+
+	ReadAhead(InputStream input) {
+		m_input = input;
+		for(int i = 0; i < BUFFERS; i++)
+			m_empty.add(new Block(new byte[BUFFER_SIZE]));
+	}
+
+	void start() {
+		m_thread = new Thread(this, "AppScan upload read-ahead"); //$NON-NLS-1$
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+
+	/**
+	 * Waits for the next block.
+	 *
+	 * @return The next block, or null at the end of the stream.
+	 * @throws IOException If reading the stream failed.
+	 */
+	Block take() throws IOException {
+		try {
+			Block block = m_filled.take();
+			if(block == END)
+				return null;
+			if(block.m_error != null)
+				throw block.m_error;
+			return block;
+		} catch (InterruptedException e) {
+			cancel();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Returns a block that has been written so that it can be filled again.
+	 *
+	 * @param block The block.
+	 */
+	void recycle(Block block) {
+		m_empty.offer(block);
+	}
+
+	/**
+	 * Stops reading ahead.
+	 */
+	void cancel() {
+		if(m_thread != null)
+			m_thread.interrupt();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while(true) {
+				Block block = m_empty.take();
+				int length = 0;
+				int read = 0;
+				// Fill the whole buffer so the writer sees large blocks.
+				while(length < block.m_data.length && (read = m_input.read(block.m_data, length, block.m_data.length - length)) != -1)
+					length += read;
+
+				if(length > 0) {
+					block.m_length = length;
+					m_filled.put(block);
+				}
+				if(read == -1) {
+					m_filled.put(END);
+					return;
+				}
+			}
+		} catch (IOException e) {
+			Block error = new Block(null);
+			error.m_error = e;
+			m_filled.offer(error);
+		} catch (InterruptedException e) {
+			// Cancelled.
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import com.hcl.appscan.sdk.http.HttpClient.Method;
+
+/**
+ * Decides whether a failed request is retried, and how long to wait before doing so.
+ * <p>
+ * GET, PUT and DELETE requests are retried after an I/O error and after a 429, 502, 503 or 504 response. POST
+ * requests are not idempotent, so they are only retried when the connection could not be established, or when the
+ * server answered 429 or 503 and therefore did not process the request. The delay grows exponentially with full
+ * jitter, unless the server asks for a specific delay with a Retry-After header.
+ * <p>
+ * The defaults can be changed with the "HttpRetryAttempts", "HttpRetryDelay" and "HttpRetryMaxDelay" system
+ * properties. Delays are in milliseconds.
+ */
+public class RetryPolicy {
+
+	public static final int DEFAULT_ATTEMPTS = 4;
+	public static final long DEFAULT_DELAY = 500;
+	public static final long DEFAULT_MAX_DELAY = 30000;
+
+	/** A policy that never retries. */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+	private static final String ATTEMPTS_PROPERTY = "HttpRetryAttempts"; //$NON-NLS-1$
+	private static final String DELAY_PROPERTY = "HttpRetryDelay"; //$NON-NLS-1$
+	private static final String MAX_DELAY_PROPERTY = "HttpRetryMaxDelay"; //$NON-NLS-1$
+	private static final String RETRY_AFTER = "Retry-After"; //$NON-NLS-1$
+	private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz"; //$NON-NLS-1$
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	// A Retry-After longer than this is treated as an outage rather than a hint.
+	private static final long MAX_RETRY_AFTER = 120000;
+
+	private static final RetryPolicy DEFAULT = new RetryPolicy(
+			Integer.getInteger(ATTEMPTS_PROPERTY, DEFAULT_ATTEMPTS),
+			Long.getLong(DELAY_PROPERTY, DEFAULT_DELAY),
+			Long.getLong(MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY));
+
+	private final int m_attempts;
+	private final long m_delay;
+	private final long m_maxDelay;
+	private final Random m_random = new Random();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param attempts The maximum number of times a request is sent, including the first time.
+	 * @param delay The delay before the first retry, in milliseconds. Each retry doubles it.
+	 * @param maxDelay The maximum delay between two attempts, in milliseconds.
+	 */
+	public RetryPolicy(int attempts, long delay, long maxDelay) {
+		m_attempts = Math.max(1, attempts);
+		m_delay = Math.max(0, delay);
+		m_maxDelay = Math.max(m_delay, maxDelay);
+	}
+
+	/**
+	 * Gets the policy used by clients that were not given one explicitly.
+	 *
+	 * @return The default {@link RetryPolicy}.
+	 */
+	public static RetryPolicy getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return The maximum number of times a request is sent.
+	 */
+	public int getAttempts() {
+		return m_attempts;
+	}
+
+	/**
+	 * Answers whether a request that failed with the given exception can be sent again.
+	 *
+	 * @param method The request method.
+	 * @param e The exception.
+	 * @return True if the request can be retried.
+	 */
+	public boolean isRetryable(Method method, IOException e) {
+		if(e instanceof CircuitBreaker.OpenException)
+			return false;
+		return method != Method.POST || e instanceof ConnectException;
+	}
+
+	/**
+	 * Answers whether a request that received the given status can be sent again.
+	 *
+	 * @param method The request method.
+	 * @param status The response code.
+	 * @return True if the request can be retried.
+	 */
+	public boolean isRetryable(Method method, int status) {
+		if(status == HTTP_TOO_MANY_REQUESTS || status == HttpURLConnection.HTTP_UNAVAILABLE)
+			return true;
+		return method != Method.POST && (status == HttpURLConnection.HTTP_BAD_GATEWAY || status == HttpURLConnection.HTTP_GATEWAY_TIMEOUT);
+	}
+
+	/**
+	 * Gets the delay before the given retry.
+	 *
+	 * @param retry The number of the retry, starting at 1.
+	 * @param response The response that is being retried, or null after an I/O error.
+	 * @return The delay in milliseconds, or -1 if the server asked for a delay that is too long to wait.
+	 */
+	public long getDelay(int retry, HttpResponse response) {
+		long retryAfter = response == null ? -1 : getRetryAfter(response.getHeaderField(RETRY_AFTER));
+		if(retryAfter > MAX_RETRY_AFTER)
+			return -1;
+		if(retryAfter >= 0)
+			return retryAfter;
+
+		long ceiling = m_delay << Math.min(retry - 1, 30);
+		if(ceiling <= 0 || ceiling > m_maxDelay)
+			ceiling = m_maxDelay;
+		synchronized (m_random) {
+			return (long)(m_random.nextDouble() * ceiling);
+		}
+	}
+
+	/**
+	 * Parses a Retry-After header, which holds either a number of seconds or an HTTP date.
+	 *
+	 * @return The delay in milliseconds, or -1 if there is no valid header.
+	 */
+	static long getRetryAfter(String value) {
+		if(value == null)
+			return -1;
+		value = value.trim();
+		try {
+			return Math.max(0, Long.parseLong(value) * 1000);
+		} catch (NumberFormatException e) {
+			// Not a number of seconds, try a date.
+		}
+		try {
+			long date = new SimpleDateFormat(HTTP_DATE, Locale.US).parse(value).getTime();
+			return Math.max(0, date - System.currentTimeMillis());
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+}
@@ -7,19 +7,24 @@
 package com.hcl.appscan.sdk.presence;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.wink.json4j.JSONArray;
 import org.apache.wink.json4j.JSONException;
 import org.apache.wink.json4j.JSONObject;
 
 import com.hcl.appscan.sdk.CoreConstants;
 import com.hcl.appscan.sdk.Messages;
 import com.hcl.appscan.sdk.auth.IAuthenticationProvider;
+import com.hcl.appscan.sdk.error.HttpException;
 import com.hcl.appscan.sdk.http.HttpClient;
 import com.hcl.appscan.sdk.http.HttpResponse;
+import com.hcl.appscan.sdk.http.JSONReader;
+import com.hcl.appscan.sdk.http.PagedCollection;
+import com.hcl.appscan.sdk.http.PagedCollection.IElementReader;
+import com.hcl.appscan.sdk.http.PagedCollection.IPageIterator;
+import com.hcl.appscan.sdk.http.PagedCollection.PageException;
 import com.hcl.appscan.sdk.logging.DefaultProgress;
 import com.hcl.appscan.sdk.logging.IProgress;
 import com.hcl.appscan.sdk.logging.Message;
@@ -29,14 +34,20 @@ public class CloudPresenceProvider implements IPresenceProvider, CoreConstants {
 	private Map<String, String> m_presences;
 	private IProgress m_progress;
 	private IAuthenticationProvider m_authProvider;
+	private HttpClient m_client;
 	
 	public CloudPresenceProvider(IAuthenticationProvider provider) {
 		this(provider, new DefaultProgress());
 	}
 	
 	public CloudPresenceProvider(IAuthenticationProvider provider, IProgress progress) {
+		this(provider, progress, HttpClient.getDefault());
+	}
+	
+	public CloudPresenceProvider(IAuthenticationProvider provider, IProgress progress, HttpClient client) {
 		m_authProvider = provider;
 		m_progress = progress;
+		m_client = client;
 	}
 	
 	@Override
@@ -46,6 +57,23 @@ public class CloudPresenceProvider implements IPresenceProvider, CoreConstants {
 		return m_presences;
 	}
 
+	/**
+	 * Iterates over the available presences, reading them from the service one page at a time so that
+	 * the first ones are available before the whole list has been transferred. An iterator that is not read
+	 * to the end should be closed.
+	 * @return The presences, as entries of presence id and name.
+	 */
+	public PagedCollection<Map.Entry<String, String>> iteratePresences() {
+		String url =  m_authProvider.getServer() + API_PRESENCES + "?fields=Name&sort=%2BName"; //$NON-NLS-1$
+		return new PagedCollection<Map.Entry<String, String>>(m_client, m_authProvider, url, PagedCollection.DEFAULT_PAGE_SIZE,
+				new IElementReader<Map.Entry<String, String>>() {
+			@Override
+			public Map.Entry<String, String> read(JSONReader reader) throws IOException, JSONException {
+				return readPresence(reader);
+			}
+		});
+	}
+
 	@Override
 	public String getName(String id) {
 		return getPresences().get(id);
@@ -59,12 +87,12 @@ public class CloudPresenceProvider implements IPresenceProvider, CoreConstants {
 		String url =  m_authProvider.getServer() + String.format(API_PRESENCES_ID, id);
 		Map<String, String> headers = m_authProvider.getAuthorizationHeader(true);
 
-		HttpClient client = new HttpClient();
-		
 		try {
-			HttpResponse response = client.delete(url, headers, null);
-			if(response.isSuccess())
+			HttpResponse response = m_client.delete(url, headers, null);
+			if(response.isSuccess()) {
+				response.close();
 				return true;
+			}
 			handleError(response);
 		}
 		catch(IOException | JSONException e) {
@@ -83,10 +111,8 @@ public class CloudPresenceProvider implements IPresenceProvider, CoreConstants {
 		Map<String, String> headers = m_authProvider.getAuthorizationHeader(true);
 		Map<String, String> details = new HashMap<String, String>();
 
-		HttpClient client = new HttpClient();
-		
 		try {
-			HttpResponse response = client.get(url, headers, null);
+			HttpResponse response = m_client.get(url, headers, null);
 			if(response.isSuccess()) {
 				JSONObject json = (JSONObject) response.getResponseBodyAsJSON();
 				for(Object key : json.keySet())
@@ -111,10 +137,8 @@ public class CloudPresenceProvider implements IPresenceProvider, CoreConstants {
 		String url =  m_authProvider.getServer() + String.format(API_PRESENCES_NEW_KEY, id);
 		Map<String, String> headers = m_authProvider.getAuthorizationHeader(true);
 
-		HttpClient client = new HttpClient();
-		
 		try {
-			HttpResponse response = client.get(url, headers, null);
+			HttpResponse response = m_client.get(url, headers, null);
 			if(response.isSuccess()) {
 				JSONObject json = (JSONObject) response.getResponseBodyAsJSON();
 				key = json.getString(KEY);
@@ -133,35 +157,44 @@ public class CloudPresenceProvider implements IPresenceProvider, CoreConstants {
 		if(!authenticated())
 			return;
 		
-		m_presences = new HashMap<String, String>();
-		String url =  m_authProvider.getServer() + API_PRESENCES + "?fields=Name&sort=%2BName"; //$NON-NLS-1$
-		Map<String, String> headers = m_authProvider.getAuthorizationHeader(true);
-		headers.putAll(Collections.singletonMap("range", "items=0-999999")); //$NON-NLS-1$ //$NON-NLS-2$
-		
-		HttpClient client = new HttpClient();
-		
+		Map<String, String> presences = new HashMap<String, String>();
+		IPageIterator<Map.Entry<String, String>> iterator = iteratePresences().iterator();
 		try {
-			HttpResponse response = client.get(url, headers, null);
-			
-			if (response.isSuccess()) {
-				JSONArray array = (JSONArray)response.getResponseBodyAsJSON();
-				if(array == null)
-					return;
-				
-				for(int i = 0; i < array.length(); i++) {
-					JSONObject object = array.getJSONObject(i);
-					String id = object.getString(ID);
-					String name = object.getString(PRESENCE_NAME);
-					m_presences.put(id, name);
-				}
+			while(iterator.hasNext()) {
+				Map.Entry<String, String> presence = iterator.next();
+				presences.put(presence.getKey(), presence.getValue());
 			}
+		}
+		catch(PageException e) {
+			if(e.getCause() instanceof HttpException && ((HttpException)e.getCause()).getResponseCode() > 0)
+				handleError((HttpException)e.getCause());
 			else
-				handleError(response);
+				m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage("error.loading.presences")), e); //$NON-NLS-1$
+			return;
 		}
-		catch(IOException | JSONException e) {
-			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage("error.loading.presences")), e); //$NON-NLS-1$
-			m_presences = null;
+		finally {
+			iterator.close();
 		}
+		m_presences = presences;
+	}
+	
+	private Map.Entry<String, String> readPresence(JSONReader reader) throws IOException, JSONException {
+		String id = null;
+		String name = null;
+		
+		reader.beginObject();
+		while(reader.hasNext()) {
+			String field = reader.nextName();
+			if(ID.equals(field))
+				id = reader.nextString();
+			else if(PRESENCE_NAME.equals(field))
+				name = reader.nextString();
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+		
+		return id == null ? null : new AbstractMap.SimpleImmutableEntry<String, String>(id, name);
 	}
 	
 	private void handleError(HttpResponse response) throws IOException, JSONException {
@@ -172,6 +205,22 @@ public class CloudPresenceProvider implements IPresenceProvider, CoreConstants {
 			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage("error.service.general", response.getResponseCode()))); //$NON-NLS-1$
 	}
 	
+	private void handleError(HttpException e) {
+		String message = null;
+		try {
+			JSONObject json = e.getReason() == null ? null : new JSONObject(e.getReason());
+			if(json != null && json.has(MESSAGE))
+				message = json.getString(MESSAGE);
+		}
+		catch(JSONException json) {
+			// The reason is not a JSON error description.
+		}
+		if(message != null)
+			m_progress.setStatus(new Message(Message.ERROR, message));
+		else
+			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage("error.service.general", e.getResponseCode()))); //$NON-NLS-1$
+	}
+	
 	private boolean authenticated() {
 		if(m_authProvider.isTokenExpired()) {
 			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage("login.error"))); //$NON-NLS-1$
@@ -8,9 +8,18 @@ package com.hcl.appscan.sdk.results;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractCollection;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -20,10 +29,16 @@ import org.apache.wink.json4j.JSONObject;
 import com.hcl.appscan.sdk.CoreConstants;
 import com.hcl.appscan.sdk.Messages;
 import com.hcl.appscan.sdk.auth.IAuthenticationProvider;
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
 import com.hcl.appscan.sdk.http.HttpClient;
 import com.hcl.appscan.sdk.http.HttpResponse;
+import com.hcl.appscan.sdk.http.JSONReader;
+import com.hcl.appscan.sdk.http.PagedCollection;
+import com.hcl.appscan.sdk.http.PagedCollection.IElementReader;
+import com.hcl.appscan.sdk.http.PagedCollection.PageException;
 import com.hcl.appscan.sdk.logging.IProgress;
 import com.hcl.appscan.sdk.logging.Message;
+import com.hcl.appscan.sdk.scan.CloudScanServiceProvider;
 import com.hcl.appscan.sdk.scan.IScanServiceProvider;
 import com.hcl.appscan.sdk.utils.SystemUtil;
 
@@ -32,27 +47,70 @@ public class CloudResultsProvider implements IResultsProvider, Serializable, Cor
 	private static final long serialVersionUID = 1L;
 
 	private static String DEFAULT_REPORT_FORMAT = "html"; //$NON-NLS-1$
+	private static final String TTL_PROPERTY = "ResultsSnapshotTTL"; //$NON-NLS-1$
+	private static final long DEFAULT_TTL = 30;
+	private static final long FAILED_TTL = 1000;
+	
+	// Results saved by earlier versions hold the status and counts as fields of their own, rather than a snapshot.
+	// They are mapped to a snapshot when read, so saved results keep their status and counts.
+	private static final String STATUS_FIELD = "m_status"; //$NON-NLS-1$
+	private static final String HAS_RESULTS_FIELD = "m_hasResults"; //$NON-NLS-1$
+	private static final String TOTAL_FIELD = "m_totalFindings"; //$NON-NLS-1$
+	private static final String HIGH_FIELD = "m_highFindings"; //$NON-NLS-1$
+	private static final String MEDIUM_FIELD = "m_mediumFindings"; //$NON-NLS-1$
+	private static final String LOW_FIELD = "m_lowFindings"; //$NON-NLS-1$
+	private static final String INFO_FIELD = "m_infoFindings"; //$NON-NLS-1$
+	private static final String TTL_FIELD = "m_ttl"; //$NON-NLS-1$
+	private static final String SNAPSHOT_FIELD = "m_snapshot"; //$NON-NLS-1$
+	
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("m_type", String.class), //$NON-NLS-1$
+		new ObjectStreamField("m_scanId", String.class), //$NON-NLS-1$
+		new ObjectStreamField("m_reportFormat", String.class), //$NON-NLS-1$
+		new ObjectStreamField("m_scanProvider", IScanServiceProvider.class), //$NON-NLS-1$
+		new ObjectStreamField("m_progress", IProgress.class), //$NON-NLS-1$
+		new ObjectStreamField(STATUS_FIELD, String.class),
+		new ObjectStreamField(HAS_RESULTS_FIELD, boolean.class),
+		new ObjectStreamField(TOTAL_FIELD, int.class),
+		new ObjectStreamField(HIGH_FIELD, int.class),
+		new ObjectStreamField(MEDIUM_FIELD, int.class),
+		new ObjectStreamField(LOW_FIELD, int.class),
+		new ObjectStreamField(INFO_FIELD, int.class),
+		new ObjectStreamField(TTL_FIELD, long.class),
+		new ObjectStreamField(SNAPSHOT_FIELD, Snapshot.class)
+	};
 	
 	private String m_type;
 	private String m_scanId;
-	private String m_status;
 	private String m_reportFormat;
-	private boolean m_hasResults;
 	private IScanServiceProvider m_scanProvider;
 	private IProgress m_progress;
+	private transient HttpClient m_client;
+	private long m_ttl = getDefaultTTL();
 	
-	private int m_totalFindings;
-	private int m_highFindings;
-	private int m_mediumFindings;
-	private int m_lowFindings;
-	private int m_infoFindings;
+	private volatile Snapshot m_snapshot;
+	private transient AsyncResult<Snapshot> m_fetch;
+	private transient volatile FindingsStore m_store;
 	
 	public CloudResultsProvider(String scanId, String type, IScanServiceProvider provider, IProgress progress) {
+		this(scanId, type, provider, progress, null);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param scanId The id of the scan.
+	 * @param type The type of the scan.
+	 * @param provider The {@link IScanServiceProvider} that owns the scan.
+	 * @param progress The {@link IProgress} that receives errors.
+	 * @param client The {@link HttpClient} used for requests, or null to use the client of the provider.
+	 */
+	public CloudResultsProvider(String scanId, String type, IScanServiceProvider provider, IProgress progress, HttpClient client) {
 		m_type = type;
 		m_scanId = scanId;
-		m_hasResults = false;
 		m_scanProvider = provider;
 		m_progress = progress;
+		m_client = client;
 		m_reportFormat = DEFAULT_REPORT_FORMAT;
 	}
 
@@ -63,46 +121,122 @@ public class CloudResultsProvider implements IResultsProvider, Serializable, Cor
 		
 		if(file != null && !file.exists()) {
 			try {
-				getReport(m_scanId, format, file);
+				getCachedReport(format, file);
 			} catch (IOException | JSONException e) {
 				m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_GETTING_RESULT)), e);
 			}
 		}
 	}
 
+	/**
+	 * Gets the findings of the scan. The findings are read from the service one page at a time as the collection is
+	 * iterated, so large results are never held in memory at once. Each iteration reads the findings again.
+	 * <p>
+	 * The size of the collection is the total reported by the issues service, asked for once. If the service does
+	 * not report it, the size is the findings count of the scan summary, which can differ from the number of
+	 * findings returned.
+	 * <p>
+	 * Iterating throws a {@link PageException} if a page of findings cannot be read.
+	 * 
+	 * @return The findings, or an empty collection if the scan has no results.
+	 */
 	@Override
-	public Collection<?> getFindings() {
-		return null;
+	public Collection<Finding> getFindings() {
+		final IAuthenticationProvider authProvider = m_scanProvider.getAuthenticationProvider();
+		if(!hasResults() || authProvider.isTokenExpired())
+			return Collections.emptyList();
+		
+		final PagedCollection<Finding> findings = getFindingPages(authProvider);
+		return new AbstractCollection<Finding>() {
+			private int m_size = -1;
+
+			@Override
+			public Iterator<Finding> iterator() {
+				return findings.iterator();
+			}
+
+			@Override
+			public synchronized int size() {
+				if(m_size < 0) {
+					long total = -1;
+					try {
+						total = findings.getTotal();
+					} catch (IOException | JSONException e) {
+						// Fall back to the summary.
+					}
+					m_size = total >= 0 ? (int)Math.min(total, Integer.MAX_VALUE) : getFindingsCount();
+				}
+				return m_size;
+			}
+		};
+	}
+
+	/**
+	 * Gets the findings of the scan in a {@link FindingsStore}, a compact form that can be filtered and grouped
+	 * efficiently. The store of a completed scan is kept until {@link #refresh()} is called.
+	 * 
+	 * @return The findings, an empty store if the scan has no results yet, or null if the findings could not be
+	 * read completely.
+	 */
+	public FindingsStore getFindingsStore() {
+		FindingsStore store = m_store;
+		if(store != null)
+			return store;
+		
+		if(!hasResults())
+			return new FindingsStore();
+		// Findings read with an expired token would come back empty, and must not be kept as the results.
+		if(m_scanProvider.getAuthenticationProvider().isTokenExpired()) {
+			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_LOGIN_EXPIRED)));
+			return null;
+		}
+		
+		store = new FindingsStore();
+		try {
+			store.addAll(getFindingPages(m_scanProvider.getAuthenticationProvider()));
+		} catch (PageException e) {
+			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_GETTING_RESULT)), e);
+			return null;
+		}
+		store.trimToSize();
+		m_store = store;
+		return store;
+	}
+
+	private PagedCollection<Finding> getFindingPages(IAuthenticationProvider authProvider) {
+		String url = authProvider.getServer() + String.format(API_ISSUES_SCAN, m_scanId);
+		return new PagedCollection<Finding>(getClient(), authProvider, url, PagedCollection.DEFAULT_PAGE_SIZE,
+				new IElementReader<Finding>() {
+			@Override
+			public Finding read(JSONReader reader) throws IOException, JSONException {
+				return Finding.read(reader);
+			}
+		});
 	}
 
 	@Override
 	public int getFindingsCount() {
-		checkResults();
-		return m_totalFindings;
+		return getSnapshot().m_totalFindings;
 	}
 
 	@Override
 	public int getHighCount() {
-		checkResults();
-		return m_highFindings;
+		return getSnapshot().m_highFindings;
 	}
 
 	@Override
 	public int getMediumCount() {
-		checkResults();
-		return m_mediumFindings;
+		return getSnapshot().m_mediumFindings;
 	}
 
 	@Override
 	public int getLowCount() {
-		checkResults();
-		return m_lowFindings;
+		return getSnapshot().m_lowFindings;
 	}
 
 	@Override
 	public int getInfoCount() {
-		checkResults();
-		return m_infoFindings;
+		return getSnapshot().m_infoFindings;
 	}
 
 	@Override
@@ -112,14 +246,21 @@ public class CloudResultsProvider implements IResultsProvider, Serializable, Cor
 
 	@Override
 	public boolean hasResults() {
-		checkResults();
-		return m_hasResults;
+		return getSnapshot().m_hasResults;
 	}
 	
 	@Override
 	public String getStatus() {
-		checkResults();
-		return m_status;
+		return getSnapshot().m_status;
+	}
+	
+	/**
+	 * Gets the id of the scan execution that the results belong to.
+	 * 
+	 * @return The execution id, or null if it is not known.
+	 */
+	public String getExecutionId() {
+		return getSnapshot().m_executionId;
 	}
 	
 	@Override
@@ -142,60 +283,269 @@ public class CloudResultsProvider implements IResultsProvider, Serializable, Cor
 		m_reportFormat = format;
 	}
 	
-	private void loadResults() {
+	/**
+	 * Sets how long a snapshot of a scan that is still running is used before it is fetched again. Results of a
+	 * completed scan do not change and are kept until {@link #refresh()} is called. After a failed fetch, the next
+	 * call tries again within a second.
+	 * 
+	 * @param ttl The time to live in milliseconds. 0 fetches the status on every call.
+	 */
+	public void setSnapshotTTL(long ttl) {
+		m_ttl = ttl;
+	}
+	
+	/**
+	 * Discards the current snapshot and fetches the results again.
+	 */
+	public void refresh() {
+		m_snapshot = null;
+		m_store = null;
+		getSnapshot();
+	}
+	
+	/**
+	 * Gets the current snapshot, fetching a new one if there is none or it has expired. Concurrent callers share
+	 * a single fetch.
+	 */
+	private Snapshot getSnapshot() {
+		Snapshot snapshot = m_snapshot;
+		if(snapshot != null && snapshot.isValid(m_ttl))
+			return snapshot;
+		
+		AsyncResult<Snapshot> fetch;
+		boolean owner = false;
+		synchronized (this) {
+			snapshot = m_snapshot;
+			if(snapshot != null && snapshot.isValid(m_ttl))
+				return snapshot;
+			if(m_fetch == null) {
+				m_fetch = new AsyncResult<Snapshot>();
+				owner = true;
+			}
+			fetch = m_fetch;
+		}
+		
+		if(owner) {
+			snapshot = null;
+			Throwable error = null;
+			try {
+				snapshot = loadResults();
+				return snapshot;
+			} catch (RuntimeException | Error e) {
+				error = e;
+				throw e;
+			}
+			finally {
+				synchronized (this) {
+					if(snapshot != null)
+						m_snapshot = snapshot;
+					m_fetch = null;
+				}
+				// Waiters are released even if loading failed unexpectedly.
+				if(snapshot != null)
+					fetch.complete(snapshot);
+				else
+					fetch.fail(error);
+			}
+		}
+		
+		try {
+			return fetch.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// The owner failed unexpectedly and has reported why.
+		}
+		snapshot = m_snapshot;
+		return snapshot != null ? snapshot : new Snapshot(FAILED);
+	}
+	
+	private static long getDefaultTTL() {
+		return Long.getLong(TTL_PROPERTY, DEFAULT_TTL) * 1000;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		Snapshot snapshot = m_snapshot;
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("m_type", m_type); //$NON-NLS-1$
+		fields.put("m_scanId", m_scanId); //$NON-NLS-1$
+		fields.put("m_reportFormat", m_reportFormat); //$NON-NLS-1$
+		fields.put("m_scanProvider", m_scanProvider); //$NON-NLS-1$
+		fields.put("m_progress", m_progress); //$NON-NLS-1$
+		fields.put(TTL_FIELD, m_ttl);
+		fields.put(SNAPSHOT_FIELD, snapshot);
+		out.writeFields();
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		m_type = (String)fields.get("m_type", null); //$NON-NLS-1$
+		m_scanId = (String)fields.get("m_scanId", null); //$NON-NLS-1$
+		m_reportFormat = (String)fields.get("m_reportFormat", DEFAULT_REPORT_FORMAT); //$NON-NLS-1$
+		m_scanProvider = (IScanServiceProvider)fields.get("m_scanProvider", null); //$NON-NLS-1$
+		m_progress = (IProgress)fields.get("m_progress", null); //$NON-NLS-1$
+		// Field initializers do not run on deserialization.
+		m_ttl = fields.defaulted(TTL_FIELD) ? getDefaultTTL() : fields.get(TTL_FIELD, 0L);
+		
+		Snapshot snapshot = (Snapshot)fields.get(SNAPSHOT_FIELD, null);
+		String status = (String)fields.get(STATUS_FIELD, null);
+		if(snapshot == null && status != null) {
+			// Saved by an earlier version.
+			snapshot = new Snapshot(status, fields.get(HAS_RESULTS_FIELD, false), fields.get(TOTAL_FIELD, 0),
+					fields.get(HIGH_FIELD, 0), fields.get(MEDIUM_FIELD, 0), fields.get(LOW_FIELD, 0), fields.get(INFO_FIELD, 0));
+		}
+		m_snapshot = snapshot;
+	}
+	
+	private Snapshot loadResults() {
 		try {
 			JSONObject obj = m_scanProvider.getScanDetails(m_scanId);
 			obj = (JSONObject) obj.get(LATEST_EXECUTION);
-			m_status = obj.getString(STATUS);
-			if(m_status != null && !m_status.equalsIgnoreCase(RUNNING)) {
-				m_totalFindings = obj.getInt(TOTAL_ISSUES);
-				m_highFindings = obj.getInt(HIGH_ISSUES);
-				m_mediumFindings = obj.getInt(MEDIUM_ISSUES);
-				m_lowFindings = obj.getInt(LOW_ISSUES);
-				m_infoFindings = obj.getInt(INFO_ISSUES);
-				m_hasResults = true;
-			}
-		} catch (IOException | JSONException | NullPointerException e) {
+			return new Snapshot(obj);
+		} catch (IOException | JSONException | NullPointerException | ClassCastException e) {
 			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_GETTING_DETAILS, e.getMessage())), e);
-			m_status = FAILED;
+			return new Snapshot(FAILED);
 		}
 	}
 	
-	private void getReport(String scanId, String format, File destination) throws IOException, JSONException {
+	/**
+	 * Gets a report from the {@link ReportCache}, downloading it and adding it to the cache if needed. Reports are only
+	 * cached once the scan has completed, since until then a new report can have different content, and only if the
+	 * cache was enabled.
+	 * 
+	 * @param format The format of the report.
+	 * @param destination The file, or the directory, to store the report in.
+	 * @return The report file, or null if the report could not be retrieved. Errors returned by the service are
+	 * reported to the progress.
+	 * @throws IOException
+	 * @throws JSONException
+	 */
+	File getCachedReport(String format, File destination) throws IOException, JSONException {
+		ReportCache cache = ReportCache.getDefault();
+		String executionId = hasResults() ? getExecutionId() : null;
+		if(cache == null || executionId == null)
+			return getReport(m_scanId, format, destination);
+		
+		String server = m_scanProvider.getAuthenticationProvider().getServer();
+		File cached = getDestination(destination, format);
+		if(cache.get(server, m_scanId, executionId, format, cached))
+			return cached;
+		
+		// Download to the destination rather than into the cache, so an interrupted download can be resumed.
+		File report = getReport(m_scanId, format, destination);
+		if(report != null)
+			cache.put(server, m_scanId, executionId, format, report);
+		return report;
+	}
+	
+	private File getReport(String scanId, String format, File destination) throws IOException, JSONException {
 		IAuthenticationProvider authProvider = m_scanProvider.getAuthenticationProvider();
 		if(authProvider.isTokenExpired()) {
 			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_LOGIN_EXPIRED)));
-			return;
+			return null;
 		}
 	
 		String request_url = authProvider.getServer() + String.format(API_SCANS_REPORT, scanId, format);
 		Map<String, String> request_headers = authProvider.getAuthorizationHeader(true);
 		request_headers.put(CONTENT_LENGTH, "0"); //$NON-NLS-1$
 	
-		HttpClient client = new HttpClient();
-		HttpResponse response = client.get(request_url, request_headers, null);
+		File report = getDestination(destination, format);
+		// Each report in a directory gets a new name, so download it under one that stays the same until it completes.
+		File download = destination.isDirectory() ? new File(destination, "." + DEFAULT_RESULT_NAME + "_" + scanId + "." + format) : report; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		report.getAbsoluteFile().getParentFile().mkdirs();
 	
-		if (response.getResponseCode() == HttpsURLConnection.HTTP_OK) {
-			if (destination.isDirectory()) {
-				String fileName = DEFAULT_RESULT_NAME + "_" + SystemUtil.getTimeStamp() + "." + format; //$NON-NLS-1$ //$NON-NLS-2$
-				destination = new File(destination, fileName);
-			}
+		HttpClient client = getClient();
+		HttpResponse response = client.download(request_url, request_headers, download);
 	
-			destination.getParentFile().mkdirs();
-			response.getResponseBodyAsFile(destination);
-		} else {
-			JSONObject object = (JSONObject) response.getResponseBodyAsJSON();
-			if (object.has(MESSAGE)) {
-				if (response.getResponseCode() == HttpsURLConnection.HTTP_BAD_REQUEST)
-					m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_GETTING_RESULT)));
-				else
-					m_progress.setStatus(new Message(Message.ERROR, object.getString(MESSAGE)));
-			}
+		if (response.isSuccess()) {
+			if (download != report)
+				Files.move(download.toPath(), report.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return report;
 		}
+		
+		JSONObject object = (JSONObject) response.getResponseBodyAsJSON();
+		if (object.has(MESSAGE)) {
+			if (response.getResponseCode() == HttpsURLConnection.HTTP_BAD_REQUEST)
+				m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_GETTING_RESULT)));
+			else
+				m_progress.setStatus(new Message(Message.ERROR, object.getString(MESSAGE)));
+		}
+		return null;
 	}
 	
-	private void checkResults() {
-		if(!m_hasResults)
-			loadResults();
+	private HttpClient getClient() {
+		if(m_client == null)
+			m_client = m_scanProvider instanceof CloudScanServiceProvider ? ((CloudScanServiceProvider)m_scanProvider).getHttpClient() : HttpClient.getDefault();
+		return m_client;
+	}
+	
+	private static File getDestination(File destination, String format) {
+		if (destination.isDirectory()) {
+			String fileName = DEFAULT_RESULT_NAME + "_" + SystemUtil.getTimeStamp() + "." + format; //$NON-NLS-1$ //$NON-NLS-2$
+			destination = new File(destination, fileName);
+		}
+		return destination;
+	}
+	
+	/**
+	 * The state of the results at one point in time.
+	 */
+	private static final class Snapshot implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final String m_status;
+		private final boolean m_failed;
+		private final String m_executionId;
+		private final boolean m_hasResults;
+		private final int m_totalFindings;
+		private final int m_highFindings;
+		private final int m_mediumFindings;
+		private final int m_lowFindings;
+		private final int m_infoFindings;
+		private final long m_fetched = System.currentTimeMillis();
+		
+		Snapshot(String status) {
+			m_status = status;
+			m_failed = true;
+			m_executionId = null;
+			m_hasResults = false;
+			m_totalFindings = m_highFindings = m_mediumFindings = m_lowFindings = m_infoFindings = 0;
+		}
+		
+		Snapshot(String status, boolean hasResults, int total, int high, int medium, int low, int info) {
+			m_status = status;
+			m_failed = false;
+			m_executionId = null;
+			m_hasResults = hasResults;
+			m_totalFindings = total;
+			m_highFindings = high;
+			m_mediumFindings = medium;
+			m_lowFindings = low;
+			m_infoFindings = info;
+		}
+		
+		Snapshot(JSONObject execution) throws JSONException {
+			m_status = execution.getString(STATUS);
+			m_failed = false;
+			m_executionId = execution.optString(ID, null);
+			m_hasResults = m_status != null && !m_status.equalsIgnoreCase(RUNNING);
+			if(m_hasResults) {
+				m_totalFindings = execution.getInt(TOTAL_ISSUES);
+				m_highFindings = execution.getInt(HIGH_ISSUES);
+				m_mediumFindings = execution.getInt(MEDIUM_ISSUES);
+				m_lowFindings = execution.getInt(LOW_ISSUES);
+				m_infoFindings = execution.getInt(INFO_ISSUES);
+			}
+			else
+				m_totalFindings = m_highFindings = m_mediumFindings = m_lowFindings = m_infoFindings = 0;
+		}
+		
+		boolean isValid(long ttl) {
+			// A snapshot that could not be fetched is only kept long enough to spare a burst of getters.
+			if(m_failed)
+				ttl = Math.min(ttl, FAILED_TTL);
+			return m_hasResults || System.currentTimeMillis() - m_fetched < ttl;
+		}
 	}
 }
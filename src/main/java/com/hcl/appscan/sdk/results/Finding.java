@@ -0,0 +1,203 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.results;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.apache.wink.json4j.JSONException;
+
+import com.hcl.appscan.sdk.CoreConstants;
+import com.hcl.appscan.sdk.http.JSONReader;
+import com.hcl.appscan.sdk.http.JSONReader.Token;
+
+/**
+ * A single issue found by a scan. Only the fields needed to identify, filter and locate the issue are kept.
+ */
+public final class Finding implements Serializable, CoreConstants {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String ISSUE_TYPE = "IssueType"; //$NON-NLS-1$
+	private static final String SEVERITY = "Severity"; //$NON-NLS-1$
+	private static final String LOCATION = "Location"; //$NON-NLS-1$
+	private static final String SOURCE_FILE = "SourceFile"; //$NON-NLS-1$
+	private static final String LINE = "Line"; //$NON-NLS-1$
+	private static final String API = "Api"; //$NON-NLS-1$
+	private static final String SOURCE = "Source"; //$NON-NLS-1$
+	private static final String SINK = "Sink"; //$NON-NLS-1$
+
+	private final String m_id;
+	private final String m_issueType;
+	private final String m_severity;
+	private final String m_status;
+	private final String m_location;
+	private final String m_file;
+	private final int m_line;
+	private final String m_api;
+	private final String m_source;
+	private final String m_sink;
+
+	public Finding(String id, String issueType, String severity, String status, String location, String file, int line,
+			String api, String source, String sink) {
+		m_id = id;
+		m_issueType = issueType;
+		m_severity = severity;
+		m_status = status;
+		m_location = location;
+		m_file = file;
+		m_line = line;
+		m_api = api;
+		m_source = source;
+		m_sink = sink;
+	}
+
+	/**
+	 * @return The id of the issue.
+	 */
+	public String getId() {
+		return m_id;
+	}
+
+	/**
+	 * @return The type of the issue. For example, "CrossSiteScripting".
+	 */
+	public String getIssueType() {
+		return m_issueType;
+	}
+
+	/**
+	 * @return The severity of the issue. For example, "High".
+	 */
+	public String getSeverity() {
+		return m_severity;
+	}
+
+	/**
+	 * @return The triage status of the issue. For example, "Open".
+	 */
+	public String getStatus() {
+		return m_status;
+	}
+
+	/**
+	 * @return The location of the issue, such as a url or a method signature.
+	 */
+	public String getLocation() {
+		return m_location;
+	}
+
+	/**
+	 * @return The source file of the issue, or null if there is none.
+	 */
+	public String getFile() {
+		return m_file;
+	}
+
+	/**
+	 * @return The line in the source file, or 0 if it is not known.
+	 */
+	public int getLine() {
+		return m_line;
+	}
+
+	/**
+	 * @return The vulnerable api, or null if there is none.
+	 */
+	public String getApi() {
+		return m_api;
+	}
+
+	/**
+	 * @return The source of the tainted data flow, or null if there is none.
+	 */
+	public String getSource() {
+		return m_source;
+	}
+
+	/**
+	 * @return The sink of the tainted data flow, or null if there is none.
+	 */
+	public String getSink() {
+		return m_sink;
+	}
+
+	@Override
+	public String toString() {
+		return m_severity + " " + m_issueType + " " + m_location; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Reads a finding from an issue object.
+	 *
+	 * @param reader The {@link JSONReader}, positioned at the start of the issue.
+	 * @return The finding.
+	 * @throws IOException
+	 * @throws JSONException
+	 */
+	static Finding read(JSONReader reader) throws IOException, JSONException {
+		String id = null;
+		String issueType = null;
+		String severity = null;
+		String status = null;
+		String location = null;
+		String file = null;
+		int line = 0;
+		String api = null;
+		String source = null;
+		String sink = null;
+
+		reader.beginObject();
+		while(reader.hasNext()) {
+			String field = reader.nextName();
+			if(ID.equals(field))
+				id = nextString(reader);
+			else if(ISSUE_TYPE.equals(field))
+				issueType = intern(nextString(reader));
+			else if(SEVERITY.equals(field))
+				severity = intern(nextString(reader));
+			else if(STATUS.equals(field))
+				status = intern(nextString(reader));
+			else if(LOCATION.equals(field))
+				location = nextString(reader);
+			else if(SOURCE_FILE.equals(field))
+				file = nextString(reader);
+			else if(LINE.equals(field) && isScalar(reader))
+				line = reader.nextInt();
+			else if(API.equals(field))
+				api = nextString(reader);
+			else if(SOURCE.equals(field))
+				source = nextString(reader);
+			else if(SINK.equals(field))
+				sink = nextString(reader);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+
+		return new Finding(id, issueType, severity, status, location, file, line, api, source, sink);
+	}
+
+	/**
+	 * Reads a scalar value, skipping objects and arrays.
+	 */
+	private static String nextString(JSONReader reader) throws IOException, JSONException {
+		if(isScalar(reader))
+			return reader.nextString();
+		reader.skipValue();
+		return null;
+	}
+
+	private static boolean isScalar(JSONReader reader) throws IOException, JSONException {
+		Token token = reader.peek();
+		return token != Token.BEGIN_OBJECT && token != Token.BEGIN_ARRAY;
+	}
+
+	// Types, severities and statuses repeat across every issue of a scan, so each finding shares a single copy.
+	private static String intern(String value) {
+		return value == null ? null : value.intern();
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.results;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.hcl.appscan.sdk.CoreConstants;
+import com.hcl.appscan.sdk.Messages;
+
+/**
+ * Compares the findings of two results, such as the latest scan of an application and the scan before it.
+ * <p>
+ * Findings are matched by a 64 bit fingerprint of their issue type, location, file and data flow. Ids, lines and
+ * triage status are left out, since they change between scans of the same code. The fingerprints of the previous
+ * findings are kept in an open addressing table of primitive longs and int counts, sized to 2 to 4 times the number
+ * of previous findings at 12 bytes per slot, and each lookup touches a single slot in the common case. While the table
+ * is built, the fingerprints are also held in an array of 8 bytes per previous finding. The current findings are
+ * classified as they are read, then the previous findings are read a second time to report the fixed ones. Findings
+ * with the same fingerprint are matched one for one.
+ */
+public final class FindingsDelta {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final int m_new;
+	private final int m_fixed;
+	private final int m_unchanged;
+
+	private FindingsDelta(int newCount, int fixedCount, int unchangedCount) {
+		m_new = newCount;
+		m_fixed = fixedCount;
+		m_unchanged = unchangedCount;
+	}
+
+	/**
+	 * @return The number of findings that are only in the current results.
+	 */
+	public int getNewCount() {
+		return m_new;
+	}
+
+	/**
+	 * @return The number of findings that are only in the previous results.
+	 */
+	public int getFixedCount() {
+		return m_fixed;
+	}
+
+	/**
+	 * @return The number of findings that are in both results.
+	 */
+	public int getUnchangedCount() {
+		return m_unchanged;
+	}
+
+	/**
+	 * Compares the findings of two completed scans. The findings of each are read completely before they are
+	 * compared, so a delta is never computed from partial results.
+	 *
+	 * @param previous The {@link CloudResultsProvider} of the earlier scan.
+	 * @param current The {@link CloudResultsProvider} of the later scan.
+	 * @param listener Receives each finding as it is classified.
+	 * @return The number of findings in each category.
+	 * @throws IOException If either scan has no results yet, or its findings could not be read, for example
+	 * because the token expired.
+	 */
+	public static FindingsDelta compute(CloudResultsProvider previous, CloudResultsProvider current, IDeltaListener listener) throws IOException {
+		return compute(getFindings(previous), getFindings(current), listener);
+	}
+
+	private static FindingsStore getFindings(CloudResultsProvider results) throws IOException {
+		FindingsStore findings = results.hasResults() ? results.getFindingsStore() : null;
+		if(findings == null)
+			throw new IOException(Messages.getMessage(CoreConstants.ERROR_GETTING_RESULT, "")); //$NON-NLS-1$
+		return findings;
+	}
+
+	/**
+	 * Compares two sets of findings. The previous findings are iterated twice.
+	 *
+	 * @param previous The findings of the earlier scan.
+	 * @param current The findings of the later scan.
+	 * @param listener Receives each finding as it is classified.
+	 * @return The number of findings in each category.
+	 */
+	public static FindingsDelta compute(Iterable<Finding> previous, Iterable<Finding> current, IDeltaListener listener) {
+		// Collect the fingerprints first so the table can be sized to the number of previous findings.
+		long[] order = new long[1024];
+		int size = 0;
+		for(Finding finding : previous) {
+			if(size == order.length)
+				order = Arrays.copyOf(order, size + (size >> 1));
+			order[size++] = fingerprint(finding);
+		}
+
+		FingerprintSet remaining = new FingerprintSet(size);
+		for(int i = 0; i < size; i++)
+			remaining.add(order[i]);
+		order = null;
+
+		int newCount = 0;
+		int unchangedCount = 0;
+		for(Finding finding : current) {
+			if(remaining.remove(fingerprint(finding))) {
+				unchangedCount++;
+				listener.onUnchanged(finding);
+			}
+			else {
+				newCount++;
+				listener.onNew(finding);
+			}
+		}
+
+		// Fingerprint the previous findings again rather than relying on the order of the first pass, which a paged
+		// collection does not guarantee across reads.
+		int fixedCount = 0;
+		for(Finding finding : previous) {
+			if(remaining.remove(fingerprint(finding))) {
+				fixedCount++;
+				listener.onFixed(finding);
+			}
+		}
+
+		return new FindingsDelta(newCount, fixedCount, unchangedCount);
+	}
+
+	/**
+	 * Computes the fingerprint of a finding. The fingerprint only depends on the content of the finding, so it can
+	 * be stored and compared across processes.
+	 *
+	 * @param finding The {@link Finding}.
+	 * @return The fingerprint.
+	 */
+	public static long fingerprint(Finding finding) {
+		long hash = FNV_OFFSET;
+		hash = hash(hash, finding.getIssueType());
+		hash = hash(hash, finding.getLocation());
+		hash = hash(hash, finding.getFile());
+		hash = hash(hash, finding.getApi());
+		hash = hash(hash, finding.getSource());
+		hash = hash(hash, finding.getSink());
+		// FNV mixes the last characters poorly, so finish with a 64 bit avalanche.
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	private static long hash(long hash, String value) {
+		if(value != null) {
+			for(int i = 0; i < value.length(); i++) {
+				hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+			}
+		}
+		// Separate the fields so that "ab" + "c" and "a" + "bc" differ, and null from empty.
+		return (hash ^ (value == null ? 0x10000 : 0x10001)) * FNV_PRIME;
+	}
+
+	/**
+	 * A multiset of fingerprints, stored in open addressing arrays. A slot in use holds one more than the number of
+	 * occurrences left, so slots stay in use once their occurrences are removed and probe chains stay intact.
+	 */
+	private static final class FingerprintSet {
+		private final long[] m_keys;
+		private final int[] m_counts;
+		private final int m_mask;
+
+		FingerprintSet(int expected) {
+			// Keep the table at most half full.
+			int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+			m_keys = new long[capacity];
+			m_counts = new int[capacity];
+			m_mask = capacity - 1;
+		}
+
+		void add(long key) {
+			int slot = (int)key & m_mask;
+			while(m_counts[slot] != 0 && m_keys[slot] != key)
+				slot = (slot + 1) & m_mask;
+			if(m_counts[slot] == 0) {
+				m_keys[slot] = key;
+				m_counts[slot] = 1;
+			}
+			m_counts[slot]++;
+		}
+
+		/**
+		 * Removes one occurrence of a fingerprint.
+		 * @return True if the fingerprint was in the set.
+		 */
+		boolean remove(long key) {
+			int slot = (int)key & m_mask;
+			while(m_counts[slot] != 0) {
+				if(m_keys[slot] == key) {
+					if(m_counts[slot] == 1)
+						return false;
+					m_counts[slot]--;
+					return true;
+				}
+				slot = (slot + 1) & m_mask;
+			}
+			return false;
+		}
+	}
+}
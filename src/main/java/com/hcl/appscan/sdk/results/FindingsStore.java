@@ -0,0 +1,345 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.results;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Holds a large number of findings in a compact, column oriented form. Each field is stored in its own primitive
+ * array, and strings are replaced by codes into a dictionary of the distinct values of the field. Findings are
+ * indexed by severity, issue type and file with one bitmap per value, so filters are combined with bitwise
+ * operations and counted without creating a {@link Finding} per row. A bitmap is built the first time its value is
+ * queried and kept up to date as findings are added, since a bitmap for every one of thousands of files would
+ * be far larger than the findings themselves.
+ * <p>
+ * Rows are numbered in the order findings are added. The store is not thread safe.
+ */
+public class FindingsStore implements Iterable<Finding> {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int NONE = -1;
+
+	/**
+	 * The fields that findings can be grouped by.
+	 */
+	public enum Field {
+		ISSUE_TYPE, SEVERITY, STATUS, LOCATION, FILE, API, SOURCE, SINK;
+	}
+
+	private int m_size;
+	private String[] m_ids = new String[INITIAL_CAPACITY];
+	private int[] m_lines = new int[INITIAL_CAPACITY];
+	private final Column[] m_columns = new Column[Field.values().length];
+
+	public FindingsStore() {
+		for(Field field : Field.values())
+			m_columns[field.ordinal()] = new Column(isIndexed(field));
+	}
+
+	/**
+	 * Adds a finding.
+	 *
+	 * @param finding The {@link Finding} to add.
+	 * @return The row of the finding.
+	 */
+	public int add(Finding finding) {
+		if(m_size == m_ids.length)
+			grow();
+
+		int row = m_size++;
+		m_ids[row] = finding.getId();
+		m_lines[row] = finding.getLine();
+		column(Field.ISSUE_TYPE).set(row, finding.getIssueType());
+		column(Field.SEVERITY).set(row, finding.getSeverity());
+		column(Field.STATUS).set(row, finding.getStatus());
+		column(Field.LOCATION).set(row, finding.getLocation());
+		column(Field.FILE).set(row, finding.getFile());
+		column(Field.API).set(row, finding.getApi());
+		column(Field.SOURCE).set(row, finding.getSource());
+		column(Field.SINK).set(row, finding.getSink());
+		return row;
+	}
+
+	/**
+	 * Adds findings, such as the findings of another scan or another store.
+	 *
+	 * @param findings The findings to add.
+	 */
+	public void addAll(Iterable<Finding> findings) {
+		for(Finding finding : findings)
+			add(finding);
+	}
+
+	/**
+	 * @return The number of findings in the store.
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Gets a finding.
+	 *
+	 * @param row The row of the finding.
+	 * @return The {@link Finding}.
+	 */
+	public Finding get(int row) {
+		if(row < 0 || row >= m_size)
+			throw new IndexOutOfBoundsException(Integer.toString(row));
+
+		return new Finding(m_ids[row], value(Field.ISSUE_TYPE, row), value(Field.SEVERITY, row), value(Field.STATUS, row),
+				value(Field.LOCATION, row), value(Field.FILE, row), m_lines[row], value(Field.API, row),
+				value(Field.SOURCE, row), value(Field.SINK, row));
+	}
+
+	/**
+	 * Gets the value of one field of a finding without creating the {@link Finding}.
+	 *
+	 * @param field The field.
+	 * @param row The row of the finding.
+	 * @return The value of the field.
+	 */
+	public String getValue(Field field, int row) {
+		if(row < 0 || row >= m_size)
+			throw new IndexOutOfBoundsException(Integer.toString(row));
+		return value(field, row);
+	}
+
+	/**
+	 * Gets the rows of all findings.
+	 *
+	 * @return A new set containing every row.
+	 */
+	public BitSet all() {
+		BitSet rows = new BitSet(m_size);
+		rows.set(0, m_size);
+		return rows;
+	}
+
+	/**
+	 * Gets the rows of the findings with a severity.
+	 *
+	 * @param severity The severity. For example, "High".
+	 * @return A new set of rows, which the caller may modify.
+	 */
+	public BitSet withSeverity(String severity) {
+		return column(Field.SEVERITY).rows(severity, m_size);
+	}
+
+	/**
+	 * Gets the rows of the findings of an issue type.
+	 *
+	 * @param issueType The issue type.
+	 * @return A new set of rows, which the caller may modify.
+	 */
+	public BitSet withIssueType(String issueType) {
+		return column(Field.ISSUE_TYPE).rows(issueType, m_size);
+	}
+
+	/**
+	 * Gets the rows of the findings in a file.
+	 *
+	 * @param file The source file.
+	 * @return A new set of rows, which the caller may modify.
+	 */
+	public BitSet inFile(String file) {
+		return column(Field.FILE).rows(file, m_size);
+	}
+
+	/**
+	 * Gets the distinct values of a field.
+	 *
+	 * @param field The field.
+	 * @return The values, in the order they were first added.
+	 */
+	public List<String> getValues(Field field) {
+		return new ArrayList<String>(column(field).m_values);
+	}
+
+	/**
+	 * Counts findings by the value of a field.
+	 *
+	 * @param field The field to group by.
+	 * @param rows The rows to count, or null for all findings.
+	 * @return The number of findings for each value that occurs at least once, in the order values were first added.
+	 */
+	public Map<String, Integer> countBy(Field field, BitSet rows) {
+		Column column = column(field);
+		Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		int[] totals = new int[column.m_values.size()];
+		int nulls = 0;
+		if(rows == null) {
+			for(int row = 0; row < m_size; row++) {
+				int code = column.m_codes[row];
+				if(code == NONE)
+					nulls++;
+				else
+					totals[code]++;
+			}
+		}
+		else {
+			for(int row = rows.nextSetBit(0); row >= 0 && row < m_size; row = rows.nextSetBit(row + 1)) {
+				int code = column.m_codes[row];
+				if(code == NONE)
+					nulls++;
+				else
+					totals[code]++;
+			}
+		}
+		for(int code = 0; code < totals.length; code++) {
+			if(totals[code] > 0)
+				counts.put(column.m_values.get(code), totals[code]);
+		}
+		if(nulls > 0)
+			counts.put(null, nulls);
+		return counts;
+	}
+
+	/**
+	 * Gets the findings in a set of rows.
+	 *
+	 * @param rows The rows.
+	 * @return The findings, created as they are iterated.
+	 */
+	public Iterable<Finding> select(final BitSet rows) {
+		return new Iterable<Finding>() {
+			@Override
+			public Iterator<Finding> iterator() {
+				return new RowIterator(rows);
+			}
+		};
+	}
+
+	@Override
+	public Iterator<Finding> iterator() {
+		return new RowIterator(null);
+	}
+
+	/**
+	 * Releases unused capacity once all findings have been added.
+	 */
+	public void trimToSize() {
+		resize(m_size);
+	}
+
+	private Column column(Field field) {
+		return m_columns[field.ordinal()];
+	}
+
+	private String value(Field field, int row) {
+		Column column = column(field);
+		int code = column.m_codes[row];
+		return code == NONE ? null : column.m_values.get(code);
+	}
+
+	private void grow() {
+		resize(Math.max(INITIAL_CAPACITY, m_ids.length + (m_ids.length >> 1)));
+	}
+
+	private void resize(int capacity) {
+		m_ids = Arrays.copyOf(m_ids, capacity);
+		m_lines = Arrays.copyOf(m_lines, capacity);
+		for(Column column : m_columns)
+			column.m_codes = Arrays.copyOf(column.m_codes, capacity);
+	}
+
+	private static boolean isIndexed(Field field) {
+		return field == Field.SEVERITY || field == Field.ISSUE_TYPE || field == Field.FILE;
+	}
+
+	/**
+	 * One dictionary encoded field.
+	 */
+	private static class Column {
+		private int[] m_codes = new int[INITIAL_CAPACITY];
+		private final List<String> m_values = new ArrayList<String>();
+		private final Map<String, Integer> m_dictionary = new HashMap<String, Integer>();
+		private final Map<Integer, BitSet> m_index;
+
+		Column(boolean indexed) {
+			m_index = indexed ? new HashMap<Integer, BitSet>() : null;
+		}
+
+		void set(int row, String value) {
+			if(value == null) {
+				m_codes[row] = NONE;
+				return;
+			}
+
+			Integer code = m_dictionary.get(value);
+			if(code == null) {
+				code = m_values.size();
+				m_dictionary.put(value, code);
+				m_values.add(value);
+			}
+			m_codes[row] = code;
+			if(m_index != null) {
+				BitSet rows = m_index.get(code);
+				if(rows != null)
+					rows.set(row);
+			}
+		}
+
+		BitSet rows(String value, int size) {
+			Integer code = m_dictionary.get(value);
+			if(code == null)
+				return new BitSet();
+
+			BitSet rows = m_index.get(code);
+			if(rows == null) {
+				int match = code;
+				rows = new BitSet(size);
+				for(int row = 0; row < size; row++) {
+					if(m_codes[row] == match)
+						rows.set(row);
+				}
+				m_index.put(code, rows);
+			}
+			return (BitSet)rows.clone();
+		}
+	}
+
+	private class RowIterator implements Iterator<Finding> {
+		private final BitSet m_rows;
+		private int m_next;
+
+		RowIterator(BitSet rows) {
+			m_rows = rows;
+			m_next = advance(0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return m_next >= 0 && m_next < m_size;
+		}
+
+		@Override
+		public Finding next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Finding finding = get(m_next);
+			m_next = advance(m_next + 1);
+			return finding;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private int advance(int from) {
+			return m_rows == null ? from : m_rows.nextSetBit(from);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.results;
+
+/**
+ * Receives the findings of a comparison between two results as they are classified.
+ */
+public interface IDeltaListener {
+
+	/**
+	 * Called for a finding of the current results that is not in the previous results.
+	 * @param finding The new {@link Finding}.
+	 */
+	public void onNew(Finding finding);
+	
+	/**
+	 * Called for a finding of the previous results that is no longer in the current results.
+	 * @param finding The fixed {@link Finding}, as it was in the previous results.
+	 */
+	public void onFixed(Finding finding);
+	
+	/**
+	 * Called for a finding of the current results that was also in the previous results.
+	 * @param finding The unchanged {@link Finding}, as it is in the current results.
+	 */
+	public void onUnchanged(Finding finding);
+}
@@ -0,0 +1,88 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.results;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.hcl.appscan.sdk.utils.FileCache;
+
+/**
+ * Keeps downloaded reports on disk, so that a report of a completed scan is only generated and downloaded once.
+ * Reports are keyed by server, scan id, execution id and format, since the report of a scan execution never
+ * changes once the execution has completed.
+ * <p>
+ * Reports hold vulnerability details, so the default cache is off unless the "ReportCacheSize" system property
+ * sets its limit, in megabytes. It is then in ".appscan/reports" in the user's home directory, which can be
+ * changed with the "ReportCacheDir" system property.
+ */
+public class ReportCache extends FileCache {
+
+	private static final String DIR_PROPERTY = "ReportCacheDir"; //$NON-NLS-1$
+	private static final String SIZE_PROPERTY = "ReportCacheSize"; //$NON-NLS-1$
+
+	private static ReportCache s_default;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dir The directory that holds the reports.
+	 * @param maxSize The size limit of the cache, in bytes.
+	 */
+	public ReportCache(File dir, long maxSize) {
+		super(dir, maxSize);
+	}
+
+	/**
+	 * Gets the cache shared by all results in this JVM.
+	 *
+	 * @return The default {@link ReportCache}, or null if it is not enabled.
+	 */
+	public static synchronized ReportCache getDefault() {
+		if(s_default == null) {
+			long size = Long.getLong(SIZE_PROPERTY, 0);
+			if(size <= 0)
+				return null;
+			String dir = System.getProperty(DIR_PROPERTY);
+			File cacheDir = dir != null ? new File(dir) : new File(System.getProperty("user.home"), ".appscan" + File.separator + "reports"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			s_default = new ReportCache(cacheDir, size * 1024 * 1024);
+		}
+		return s_default;
+	}
+
+	/**
+	 * Copies a cached report to a destination.
+	 *
+	 * @param server The url of the service that generated the report.
+	 * @param scanId The id of the scan.
+	 * @param executionId The id of the scan execution.
+	 * @param format The format of the report.
+	 * @param destination The file to copy the report to. An existing file is replaced.
+	 * @return True if the report was cached and has been copied.
+	 */
+	public boolean get(String server, String scanId, String executionId, String format, File destination) {
+		return get(getName(server, scanId, executionId, format), destination);
+	}
+
+	/**
+	 * Adds a report to the cache. A report created with {@link #createTempFile()} is moved into the cache, and any
+	 * other file is copied, so the report stays where it is.
+	 *
+	 * @param server The url of the service that generated the report.
+	 * @param scanId The id of the scan.
+	 * @param executionId The id of the scan execution.
+	 * @param format The format of the report.
+	 * @param report The report file.
+	 * @throws IOException If the report could not be added.
+	 */
+	public void put(String server, String scanId, String executionId, String format, File report) throws IOException {
+		put(getName(server, scanId, executionId, format), report);
+	}
+
+	private static String getName(String server, String scanId, String executionId, String format) {
+		return hash(server + '\0' + scanId + '\0' + executionId + '\0' + format) + '.' + format.replaceAll("[^A-Za-z0-9]", ""); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,459 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.results;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.wink.json4j.JSONArray;
+import org.apache.wink.json4j.JSONException;
+import org.apache.wink.json4j.JSONObject;
+
+/**
+ * Converts an XML report, as returned by {@link IResultsProvider#getResultsFile(File, String)} with the "xml"
+ * format, to SARIF or to JSON lines. The report is read with a streaming parser and each issue is written as soon
+ * as it has been read, so memory use does not depend on the size of the report.
+ * <p>
+ * Only the fields of a {@link Finding} are exported. Request and response variants, fix recommendations and other
+ * large sections of the report are skipped without being read into memory.
+ */
+public final class ReportExporter {
+
+	/**
+	 * The output formats.
+	 */
+	public enum Format {
+		/** A SARIF 2.1.0 log with one run. */
+		SARIF,
+		/** One JSON object per line for each issue. */
+		NDJSON;
+	}
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String TOTAL_ENTITY_SIZE_LIMIT = "http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit"; //$NON-NLS-1$
+	// Longer values are truncated rather than held in memory.
+	private static final int MAX_TEXT = 64 * 1024;
+
+	private static final String SARIF_VERSION = "2.1.0"; //$NON-NLS-1$
+	private static final String SARIF_SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json"; //$NON-NLS-1$
+	private static final String TOOL_NAME = "HCL AppScan"; //$NON-NLS-1$
+	private static final String FINGERPRINT = "appscan/v1"; //$NON-NLS-1$
+
+	private static final String ISSUE_TYPE_GROUP = "issue-type-group"; //$NON-NLS-1$
+	private static final String ISSUE_GROUP = "issue-group"; //$NON-NLS-1$
+	private static final String ITEM = "item"; //$NON-NLS-1$
+	private static final String ID = "id"; //$NON-NLS-1$
+	private static final String NAME = "name"; //$NON-NLS-1$
+	private static final String ISSUE_TYPE_REF = "issue-type/ref"; //$NON-NLS-1$
+	private static final String ISSUE_TYPE = "issue-type"; //$NON-NLS-1$
+	private static final String SEVERITY = "severity"; //$NON-NLS-1$
+	private static final String STATUS = "status"; //$NON-NLS-1$
+	private static final String LOCATION = "location"; //$NON-NLS-1$
+	private static final String URL = "url"; //$NON-NLS-1$
+	private static final String SOURCE_FILE = "source-file"; //$NON-NLS-1$
+	private static final String FILE = "file"; //$NON-NLS-1$
+	private static final String LINE = "line"; //$NON-NLS-1$
+	private static final String API = "api"; //$NON-NLS-1$
+	private static final String SOURCE = "source"; //$NON-NLS-1$
+	private static final String SINK = "sink"; //$NON-NLS-1$
+
+	private static final Set<String> FIELDS = new HashSet<String>(Arrays.asList(ISSUE_TYPE_REF, ISSUE_TYPE, SEVERITY,
+			STATUS, LOCATION, URL, SOURCE_FILE, FILE, LINE, API, SOURCE, SINK));
+	private static final Set<String> SKIPPED = new HashSet<String>(Arrays.asList("variant-group", "fix-group", //$NON-NLS-1$ //$NON-NLS-2$
+			"advisory", "fix-recommendation", "remediation", "request", "response", "test-http-traffic", "trace")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+
+	private final XMLStreamReader m_reader;
+	private final Writer m_writer;
+	private final Format m_format;
+	private final Map<String, String> m_issueTypes = new LinkedHashMap<String, String>();
+	private boolean m_started;
+	private int m_count;
+
+	private ReportExporter(XMLStreamReader reader, Writer writer, Format format) {
+		m_reader = reader;
+		m_writer = writer;
+		m_format = format;
+	}
+
+	/**
+	 * Converts a report file.
+	 *
+	 * @param report The XML report.
+	 * @param destination The file to write.
+	 * @param format The output {@link Format}.
+	 * @return The number of issues exported.
+	 * @throws IOException If either file cannot be accessed or the report is not valid XML.
+	 */
+	public static int export(File report, File destination, Format format) throws IOException {
+		try (InputStream in = new FileInputStream(report); OutputStream out = new FileOutputStream(destination)) {
+			return export(in, out, format);
+		}
+	}
+
+	/**
+	 * Converts a report. The streams are not closed.
+	 *
+	 * @param report The XML report.
+	 * @param out The stream to write to, encoded as UTF-8.
+	 * @param format The output {@link Format}.
+	 * @return The number of issues exported.
+	 * @throws IOException If the streams fail or the report is not valid XML.
+	 */
+	public static int export(InputStream report, OutputStream out, Format format) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		// Reports never need a DTD, and resolving one would expose the reader to external entities.
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+		// The JDK parser counts even &amp; and &lt; towards a total entity size limit, which escaped traffic in
+		// a large report exceeds. Without a DTD no other entities can be declared, so the limit can be lifted.
+		try {
+			factory.setProperty(TOTAL_ENTITY_SIZE_LIMIT, 0);
+		} catch (IllegalArgumentException e) {
+			// Not the JDK parser.
+		}
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		XMLStreamReader reader = null;
+		try {
+			reader = factory.createXMLStreamReader(new BufferedInputStream(report, BUFFER_SIZE));
+			ReportExporter exporter = new ReportExporter(reader, writer, format);
+			exporter.run();
+			writer.flush();
+			return exporter.m_count;
+		} catch (XMLStreamException | JSONException e) {
+			throw new IOException(e.getLocalizedMessage(), e);
+		} finally {
+			if(reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	private void run() throws XMLStreamException, IOException, JSONException {
+		while(m_reader.hasNext()) {
+			if(m_reader.next() != XMLStreamConstants.START_ELEMENT)
+				continue;
+			String name = m_reader.getLocalName();
+			if(ISSUE_TYPE_GROUP.equals(name))
+				readIssueTypes();
+			else if(ISSUE_GROUP.equals(name))
+				readIssues();
+		}
+		end();
+	}
+
+	/**
+	 * Reads the names of the issue types, which come before the issues.
+	 */
+	private void readIssueTypes() throws XMLStreamException {
+		int depth = 1;
+		String id = null;
+		while(depth > 0) {
+			int event = m_reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				String name = m_reader.getLocalName();
+				if(depth == 2 && ITEM.equals(name))
+					id = m_reader.getAttributeValue(null, ID);
+				else if(depth == 3 && NAME.equals(name) && id != null)
+					m_issueTypes.put(id, readText(true));
+				else if(depth > 2)
+					skip();
+				if(m_reader.isEndElement())
+					depth--;
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	private void readIssues() throws XMLStreamException, IOException, JSONException {
+		start();
+		int depth = 1;
+		while(depth > 0) {
+			int event = m_reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				if(ITEM.equals(m_reader.getLocalName()))
+					write(readIssue());
+				else
+					skip();
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	/**
+	 * Reads an issue item. The first value of each field is kept, wherever it is in the item.
+	 */
+	private Finding readIssue() throws XMLStreamException {
+		Map<String, String> fields = new HashMap<String, String>();
+		String id = m_reader.getAttributeValue(null, ID);
+		String parent = ITEM;
+		String[] path = new String[16];
+		int depth = 0;
+		path[0] = parent;
+
+		int event = m_reader.next();
+		while(depth >= 0) {
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				String name = m_reader.getLocalName();
+				String key = path[depth] + '/' + name;
+				if(SKIPPED.contains(name) || depth + 1 == path.length) {
+					skip();
+					event = m_reader.next();
+					continue;
+				}
+				if(!FIELDS.contains(key))
+					key = name;
+				if(FIELDS.contains(key) && !fields.containsKey(key)) {
+					String text = readText(false);
+					if(m_reader.isEndElement()) {
+						if(text != null)
+							fields.put(key, text);
+						event = m_reader.next();
+						continue;
+					}
+					// The field holds elements, and the reader is on the first of them.
+					path[++depth] = name;
+					event = m_reader.getEventType();
+					continue;
+				}
+				path[++depth] = name;
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+			if(depth >= 0)
+				event = m_reader.next();
+		}
+
+		String issueType = first(fields, ISSUE_TYPE_REF, ISSUE_TYPE);
+		String line = fields.get(LINE);
+		int lineNumber = 0;
+		if(line != null) {
+			try {
+				lineNumber = Integer.parseInt(line);
+			} catch (NumberFormatException e) {
+				// Not a line number.
+			}
+		}
+		return new Finding(id, issueType, fields.get(SEVERITY), fields.get(STATUS), first(fields, LOCATION, URL),
+				first(fields, SOURCE_FILE, FILE), lineNumber, fields.get(API), fields.get(SOURCE), fields.get(SINK));
+	}
+
+	/**
+	 * Reads the text of the current element. Returns with the reader on the end of the element, unless child
+	 * elements are not flattened and one is found, in which case it returns null with the reader on the start of
+	 * that child.
+	 */
+	private String readText(boolean flatten) throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int depth = 0;
+		while(true) {
+			int event = m_reader.next();
+			switch(event) {
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if(text.length() < MAX_TEXT)
+					text.append(m_reader.getTextCharacters(), m_reader.getTextStart(), Math.min(m_reader.getTextLength(), MAX_TEXT - text.length()));
+				break;
+			case XMLStreamConstants.START_ELEMENT:
+				if(!flatten)
+					return null;
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if(depth-- > 0)
+					break;
+				String value = text.toString().trim();
+				return value.length() == 0 ? null : value;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Skips the current element and its content. Returns with the reader on the end of the element.
+	 */
+	private void skip() throws XMLStreamException {
+		int depth = 1;
+		while(depth > 0) {
+			int event = m_reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if(event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	private void start() throws IOException, JSONException {
+		if(m_started || m_format != Format.SARIF) {
+			m_started = true;
+			return;
+		}
+		m_started = true;
+
+		JSONArray rules = new JSONArray();
+		for(Map.Entry<String, String> issueType : m_issueTypes.entrySet()) {
+			JSONObject rule = new JSONObject();
+			rule.put("id", issueType.getKey()); //$NON-NLS-1$
+			rule.put("name", issueType.getValue()); //$NON-NLS-1$
+			rule.put("shortDescription", text(issueType.getValue())); //$NON-NLS-1$
+			rules.add(rule);
+		}
+		JSONObject driver = new JSONObject();
+		driver.put("name", TOOL_NAME); //$NON-NLS-1$
+		driver.put("rules", rules); //$NON-NLS-1$
+		JSONObject tool = new JSONObject();
+		tool.put("driver", driver); //$NON-NLS-1$
+
+		m_writer.write("{\"version\":\"" + SARIF_VERSION + "\",\"$schema\":\"" + SARIF_SCHEMA + "\",\"runs\":[{\"tool\":"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		tool.write(m_writer);
+		m_writer.write(",\"results\":["); //$NON-NLS-1$
+	}
+
+	private void end() throws IOException, JSONException {
+		start();
+		if(m_format == Format.SARIF)
+			m_writer.write("]}]}\n"); //$NON-NLS-1$
+	}
+
+	private void write(Finding finding) throws IOException, JSONException {
+		if(m_format == Format.NDJSON) {
+			toJSON(finding).write(m_writer);
+			m_writer.write('\n');
+		}
+		else {
+			if(m_count > 0)
+				m_writer.write(',');
+			toSarif(finding).write(m_writer);
+		}
+		m_count++;
+	}
+
+	private JSONObject toJSON(Finding finding) throws JSONException {
+		JSONObject issue = new JSONObject();
+		putIfSet(issue, "id", finding.getId()); //$NON-NLS-1$
+		putIfSet(issue, "issueType", finding.getIssueType()); //$NON-NLS-1$
+		putIfSet(issue, "issueTypeName", m_issueTypes.get(finding.getIssueType())); //$NON-NLS-1$
+		putIfSet(issue, "severity", finding.getSeverity()); //$NON-NLS-1$
+		putIfSet(issue, "status", finding.getStatus()); //$NON-NLS-1$
+		putIfSet(issue, "location", finding.getLocation()); //$NON-NLS-1$
+		putIfSet(issue, "file", finding.getFile()); //$NON-NLS-1$
+		if(finding.getLine() > 0)
+			issue.put("line", finding.getLine()); //$NON-NLS-1$
+		putIfSet(issue, "api", finding.getApi()); //$NON-NLS-1$
+		putIfSet(issue, "source", finding.getSource()); //$NON-NLS-1$
+		putIfSet(issue, "sink", finding.getSink()); //$NON-NLS-1$
+		return issue;
+	}
+
+	private JSONObject toSarif(Finding finding) throws JSONException {
+		String issueType = finding.getIssueType();
+		String name = m_issueTypes.get(issueType);
+		String location = finding.getLocation();
+
+		JSONObject result = new JSONObject();
+		putIfSet(result, "ruleId", issueType); //$NON-NLS-1$
+		result.put("level", getLevel(finding.getSeverity())); //$NON-NLS-1$
+		String message = name != null ? name : issueType;
+		result.put("message", text(location == null ? message : message + ": " + location)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		JSONObject sarifLocation = new JSONObject();
+		if(finding.getFile() != null) {
+			JSONObject artifact = new JSONObject();
+			artifact.put("uri", finding.getFile()); //$NON-NLS-1$
+			JSONObject physical = new JSONObject();
+			physical.put("artifactLocation", artifact); //$NON-NLS-1$
+			if(finding.getLine() > 0) {
+				JSONObject region = new JSONObject();
+				region.put("startLine", finding.getLine()); //$NON-NLS-1$
+				physical.put("region", region); //$NON-NLS-1$
+			}
+			sarifLocation.put("physicalLocation", physical); //$NON-NLS-1$
+		}
+		if(location != null) {
+			JSONObject logical = new JSONObject();
+			logical.put("fullyQualifiedName", location); //$NON-NLS-1$
+			JSONArray logicals = new JSONArray();
+			logicals.add(logical);
+			sarifLocation.put("logicalLocations", logicals); //$NON-NLS-1$
+		}
+		if(!sarifLocation.isEmpty()) {
+			JSONArray locations = new JSONArray();
+			locations.add(sarifLocation);
+			result.put("locations", locations); //$NON-NLS-1$
+		}
+
+		JSONObject fingerprints = new JSONObject();
+		fingerprints.put(FINGERPRINT, Long.toHexString(FindingsDelta.fingerprint(finding)));
+		result.put("partialFingerprints", fingerprints); //$NON-NLS-1$
+
+		JSONObject properties = new JSONObject();
+		putIfSet(properties, "id", finding.getId()); //$NON-NLS-1$
+		putIfSet(properties, "severity", finding.getSeverity()); //$NON-NLS-1$
+		putIfSet(properties, "status", finding.getStatus()); //$NON-NLS-1$
+		putIfSet(properties, "api", finding.getApi()); //$NON-NLS-1$
+		putIfSet(properties, "source", finding.getSource()); //$NON-NLS-1$
+		putIfSet(properties, "sink", finding.getSink()); //$NON-NLS-1$
+		result.put("properties", properties); //$NON-NLS-1$
+		return result;
+	}
+
+	private static String getLevel(String severity) {
+		if(severity == null)
+			return "warning"; //$NON-NLS-1$
+		String value = severity.toLowerCase();
+		if(value.equals("critical") || value.equals("high")) //$NON-NLS-1$ //$NON-NLS-2$
+			return "error"; //$NON-NLS-1$
+		if(value.equals("medium")) //$NON-NLS-1$
+			return "warning"; //$NON-NLS-1$
+		return "note"; //$NON-NLS-1$
+	}
+
+	private static JSONObject text(String text) throws JSONException {
+		JSONObject message = new JSONObject();
+		message.put("text", text == null ? "" : text); //$NON-NLS-1$ //$NON-NLS-2$
+		return message;
+	}
+
+	private static void putIfSet(JSONObject object, String key, String value) throws JSONException {
+		if(value != null)
+			object.put(key, value);
+	}
+
+	private static String first(Map<String, String> fields, String key, String fallback) {
+		String value = fields.get(key);
+		return value != null ? value : fields.get(fallback);
+	}
+}
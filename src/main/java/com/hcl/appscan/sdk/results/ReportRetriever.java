@@ -0,0 +1,181 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.results;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+
+import com.hcl.appscan.sdk.CoreConstants;
+import com.hcl.appscan.sdk.Messages;
+import com.hcl.appscan.sdk.concurrent.AsyncExecutor;
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
+import com.hcl.appscan.sdk.logging.IProgress;
+import com.hcl.appscan.sdk.scan.IScanServiceProvider;
+
+/**
+ * Retrieves many reports at once. Reports are generated and downloaded on threads of their own, taken from
+ * {@link AsyncExecutor#supplyLongRunning(Callable)} so that they do not hold the threads of the shared pool, with at
+ * most a fixed number in progress at a time. Each report is handed to its caller as soon as it has been stored.
+ * Requests are reused across reports through the connection pool of
+ * {@link com.hcl.appscan.sdk.http.HttpConnectionManager}, and completed reports are taken from the
+ * {@link ReportCache} when it is enabled.
+ * <p>
+ * The default number of reports in progress can be set with the "ReportParallelism" system property.
+ */
+public class ReportRetriever implements CoreConstants {
+
+	private static final String PARALLELISM_PROPERTY = "ReportParallelism"; //$NON-NLS-1$
+	private static final int DEFAULT_PARALLELISM = 4;
+
+	private final IScanServiceProvider m_provider;
+	private final IProgress m_progress;
+	private final int m_parallelism;
+	private final Map<String, Scan> m_scans = new HashMap<String, Scan>();
+	private final Queue<Runnable> m_pending = new ArrayDeque<Runnable>();
+	private int m_running;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param provider The {@link IScanServiceProvider} that owns the scans.
+	 * @param progress The {@link IProgress} that receives errors returned by the service.
+	 */
+	public ReportRetriever(IScanServiceProvider provider, IProgress progress) {
+		this(provider, progress, Integer.getInteger(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param provider The {@link IScanServiceProvider} that owns the scans.
+	 * @param progress The {@link IProgress} that receives errors returned by the service.
+	 * @param parallelism The maximum number of reports in progress at a time.
+	 */
+	public ReportRetriever(IScanServiceProvider provider, IProgress progress, int parallelism) {
+		m_provider = provider;
+		m_progress = progress;
+		m_parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Queues a report for retrieval.
+	 *
+	 * @param scanId The id of the scan.
+	 * @param format The format of the report. For example, "html", "pdf" or "xml".
+	 * @param destination The file, or the directory, to store the report in.
+	 * @return The report file, once it has been stored.
+	 */
+	public AsyncResult<File> retrieve(final String scanId, final String format, final File destination) {
+		final AsyncResult<File> result = new AsyncResult<File>();
+		final CloudResultsProvider results = getResults(scanId);
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					// Skip reports that were cancelled while they were queued.
+					if(result.isDone())
+						return;
+					File report = results.getCachedReport(format, destination);
+					if(report != null)
+						result.complete(report);
+					else
+						result.fail(new IOException(Messages.getMessage(ERROR_GETTING_RESULT, scanId + " (" + format + ")"))); //$NON-NLS-1$ //$NON-NLS-2$
+				} catch (Throwable e) {
+					result.fail(e);
+				} finally {
+					release(scanId);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Queues every format of every scan for retrieval. Reports are named after the scan and format.
+	 *
+	 * @param scanIds The ids of the scans.
+	 * @param formats The formats of the reports.
+	 * @param directory The directory to store the reports in.
+	 * @return The report files, in the order of the scans and then of the formats. The result fails if any
+	 * report fails, but every other report is still retrieved.
+	 */
+	public AsyncResult<List<File>> retrieveAll(Collection<String> scanIds, Collection<String> formats, File directory) {
+		List<AsyncResult<File>> reports = new ArrayList<AsyncResult<File>>();
+		for(String scanId : scanIds) {
+			for(String format : formats)
+				reports.add(retrieve(scanId, format, new File(directory, scanId + "." + format))); //$NON-NLS-1$
+		}
+		return AsyncResult.all(reports);
+	}
+
+	/**
+	 * @return The number of reports in progress or waiting.
+	 */
+	public synchronized int getPendingCount() {
+		return m_running + m_pending.size();
+	}
+
+	// Formats of the same scan share one results provider, so its status is only read once.
+	private synchronized CloudResultsProvider getResults(String scanId) {
+		Scan scan = m_scans.get(scanId);
+		if(scan == null) {
+			scan = new Scan(new CloudResultsProvider(scanId, null, m_provider, m_progress));
+			m_scans.put(scanId, scan);
+		}
+		scan.m_queued++;
+		return scan.m_results;
+	}
+
+	// Drops the results provider once the last queued format of its scan is done.
+	private synchronized void release(String scanId) {
+		Scan scan = m_scans.get(scanId);
+		if(scan != null && --scan.m_queued == 0)
+			m_scans.remove(scanId);
+	}
+
+	private void submit(final Runnable job) {
+		synchronized (this) {
+			if(m_running >= m_parallelism) {
+				m_pending.add(job);
+				return;
+			}
+			m_running++;
+		}
+		AsyncExecutor.supplyLongRunning(new Callable<Void>() {
+			@Override
+			public Void call() {
+				Runnable next = job;
+				while(next != null) {
+					next.run();
+					// Take the next report on this thread rather than submitting a new task.
+					synchronized (ReportRetriever.this) {
+						next = m_pending.poll();
+						if(next == null)
+							m_running--;
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	private static final class Scan {
+		private final CloudResultsProvider m_results;
+		private int m_queued;
+
+		Scan(CloudResultsProvider results) {
+			m_results = results;
+		}
+	}
+}
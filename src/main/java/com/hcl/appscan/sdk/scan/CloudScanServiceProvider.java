@@ -9,9 +9,14 @@ package com.hcl.appscan.sdk.scan;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -20,25 +25,35 @@ import org.apache.wink.json4j.JSONObject;
 
 import com.hcl.appscan.sdk.CoreConstants;
 import com.hcl.appscan.sdk.Messages;
-import com.hcl.appscan.sdk.app.CloudApplicationProvider;
-import com.hcl.appscan.sdk.app.IApplicationProvider;
+import com.hcl.appscan.sdk.app.ApplicationIndex;
 import com.hcl.appscan.sdk.auth.IAuthenticationProvider;
+import com.hcl.appscan.sdk.concurrent.AsyncExecutor;
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
+import com.hcl.appscan.sdk.http.ChunkedUpload;
 import com.hcl.appscan.sdk.http.HttpClient;
 import com.hcl.appscan.sdk.http.HttpPart;
 import com.hcl.appscan.sdk.http.HttpResponse;
+import com.hcl.appscan.sdk.http.JSONReader;
 import com.hcl.appscan.sdk.logging.IProgress;
 import com.hcl.appscan.sdk.logging.Message;
 
-public class CloudScanServiceProvider implements IScanServiceProvider, Serializable, CoreConstants {
+public class CloudScanServiceProvider implements IAsyncScanServiceProvider, Serializable, CoreConstants {
 
 	private static final long serialVersionUID = 1L;
+	private static final int STATUS_BATCH_SIZE = 40;
 
 	private IProgress m_progress;
 	private IAuthenticationProvider m_authProvider;
+	private transient HttpClient m_client;
 	
 	public CloudScanServiceProvider(IProgress progress, IAuthenticationProvider authProvider) {
+		this(progress, authProvider, HttpClient.getDefault());
+	}
+	
+	public CloudScanServiceProvider(IProgress progress, IAuthenticationProvider authProvider, HttpClient client) {
 		m_progress = progress;
 		m_authProvider = authProvider;
+		m_client = client;
 	}
 	
 	@Override
@@ -51,7 +66,7 @@ public class CloudScanServiceProvider implements IScanServiceProvider, Serializa
 		String request_url =  m_authProvider.getServer() + String.format(API_SCANNER, type);
 		Map<String, String> request_headers = m_authProvider.getAuthorizationHeader(true);
 		
-		HttpClient client = new HttpClient();
+		HttpClient client = getClient();
 		
 		try {
 			HttpResponse response = client.postForm(request_url, request_headers, params);
@@ -63,7 +78,8 @@ public class CloudScanServiceProvider implements IScanServiceProvider, Serializa
 				m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(CREATE_SCAN_SUCCESS)));
 				return json.getString(ID);
 			}
-			else if (json != null && json.has(MESSAGE))
+			
+			if (json != null && json.has(MESSAGE))
 				m_progress.setStatus(new Message(Message.ERROR, json.getString(MESSAGE)));
 			else
 				m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_SUBMITTING_SCAN, status)));
@@ -82,13 +98,21 @@ public class CloudScanServiceProvider implements IScanServiceProvider, Serializa
 		
 		String fileUploadAPI =  m_authProvider.getServer() + API_FILE_UPLOAD;
 		
-		List<HttpPart> parts = new ArrayList<HttpPart>();
-		parts.add(new HttpPart(FILE_TO_UPLOAD, file, "multipart/form-data")); //$NON-NLS-1$
-		
-		HttpClient client = new HttpClient();
+		HttpClient client = getClient();
 		
 		try {
-			HttpResponse response = client.postMultipart(fileUploadAPI, m_authProvider.getAuthorizationHeader(true), parts);		
+			HttpResponse response;
+			String chunkedUploadAPI = System.getProperty(CHUNKED_UPLOAD_URL);
+			if(chunkedUploadAPI != null && file.length() > ChunkedUpload.DEFAULT_CHUNK_SIZE) {
+				if(chunkedUploadAPI.startsWith("/")) //$NON-NLS-1$
+					chunkedUploadAPI = m_authProvider.getServer() + chunkedUploadAPI;
+				response = new ChunkedUpload(client).upload(chunkedUploadAPI, m_authProvider.getAuthorizationHeader(true), file);
+			}
+			else {
+				List<HttpPart> parts = new ArrayList<HttpPart>();
+				parts.add(new HttpPart(FILE_TO_UPLOAD, file, "multipart/form-data")); //$NON-NLS-1$
+				response = client.postMultipart(fileUploadAPI, m_authProvider.getAuthorizationHeader(true), parts);
+			}
 			JSONObject object = (JSONObject) response.getResponseBodyAsJSON();
 
 			if (object.has(MESSAGE)) {
@@ -110,23 +134,129 @@ public class CloudScanServiceProvider implements IScanServiceProvider, Serializa
 		String request_url = m_authProvider.getServer() + String.format(API_BASIC_DETAILS, scanId);
 		Map<String, String> request_headers = m_authProvider.getAuthorizationHeader(true);
 		
-		HttpClient client = new HttpClient();
+		HttpClient client = getClient();
 		HttpResponse response = client.get(request_url, request_headers, null);
 		
 		if (response.getResponseCode() == HttpsURLConnection.HTTP_OK || response.getResponseCode() == HttpsURLConnection.HTTP_CREATED)
 			return (JSONObject) response.getResponseBodyAsJSON();
 
+		response.close();
 		if (response.getResponseCode() == HttpsURLConnection.HTTP_BAD_REQUEST)
 			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_INVALID_JOB_ID, scanId)));
 		
 		return null;
 	}
 
+	@Override
+	public AsyncResult<String> createAndExecuteScanAsync(final String type, final Map<String, String> params) {
+		return AsyncExecutor.supply(new Callable<String>() {
+			@Override
+			public String call() {
+				return createAndExecuteScan(type, params);
+			}
+		});
+	}
+	
+	@Override
+	public AsyncResult<String> submitFileAsync(final File file) {
+		return AsyncExecutor.supply(new Callable<String>() {
+			@Override
+			public String call() throws IOException {
+				return submitFile(file);
+			}
+		});
+	}
+	
+	@Override
+	public AsyncResult<JSONObject> awaitCompletion(String scanId) {
+		return ScanStatusPoller.getDefault().watch(this, scanId);
+	}
+	
+	/**
+	 * Gets the status of the latest execution of several scans. The scans are selected with an OData filter on
+	 * their ids, a few dozen per request, and only the ids and statuses are returned by the service.
+	 * 
+	 * @param scanIds The ids of the scans.
+	 * @return The statuses found, keyed by scan id, or null if a request failed. Scans that were not found are
+	 * left out.
+	 * @throws IOException
+	 * @throws JSONException
+	 */
+	public Map<String, String> getScanStatuses(Collection<String> scanIds) throws IOException, JSONException {
+		if(loginExpired())
+			return null;
+		
+		Map<String, String> statuses = new HashMap<String, String>();
+		List<String> ids = new ArrayList<String>(scanIds);
+		// Keeps each request url well under the length that servers and proxies accept.
+		for(int first = 0; first < ids.size(); first += STATUS_BATCH_SIZE) {
+			StringBuilder filter = new StringBuilder();
+			for(String id : ids.subList(first, Math.min(first + STATUS_BATCH_SIZE, ids.size()))) {
+				if(filter.length() > 0)
+					filter.append(" or "); //$NON-NLS-1$
+				filter.append(ID).append(" eq '").append(id.replace("'", "''")).append('\''); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+			String request_url = m_authProvider.getServer() + API_SCANS + "?$filter=" + encode(filter.toString()) //$NON-NLS-1$
+					+ "&$select=" + encode(ID + "," + LATEST_EXECUTION + "/" + STATUS); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			Map<String, String> request_headers = m_authProvider.getAuthorizationHeader(true);
+			
+			HttpResponse response = getClient().get(request_url, request_headers, null);
+			if (!response.isSuccess()) {
+				response.close();
+				return null;
+			}
+			
+			JSONReader reader = response.getResponseBodyAsJSONReader();
+			if(reader == null)
+				continue;
+			try {
+				reader.beginArray();
+				while(reader.hasNext()) {
+					JSONObject scan = reader.nextObject();
+					String id = scan.optString(ID, null);
+					JSONObject execution = scan.optJSONObject(LATEST_EXECUTION);
+					if(id != null && execution != null && execution.optString(STATUS, null) != null)
+						statuses.put(id, execution.optString(STATUS));
+				}
+				reader.endArray();
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return statuses;
+	}
+
+	private static String encode(String value) throws UnsupportedEncodingException {
+		return URLEncoder.encode(value, "UTF-8").replace("+", "%20"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
 	@Override
 	public IAuthenticationProvider getAuthenticationProvider() {
 		return m_authProvider;
 	}
 	
+	/**
+	 * Gets the {@link HttpClient} used for requests to the service.
+	 * 
+	 * @return The {@link HttpClient}.
+	 */
+	protected HttpClient getClient() {
+		if(m_client == null)
+			m_client = HttpClient.getDefault();
+		return m_client;
+	}
+	
+	/**
+	 * Gets the {@link HttpClient} used for requests to the service, so that results and reports of its scans are
+	 * retrieved with the same transport.
+	 * 
+	 * @return The {@link HttpClient}.
+	 */
+	public HttpClient getHttpClient() {
+		return getClient();
+	}
+	
 	private boolean loginExpired() {
 		if(m_authProvider.isTokenExpired()) {
 			m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_LOGIN_EXPIRED)));
@@ -136,11 +266,8 @@ public class CloudScanServiceProvider implements IScanServiceProvider, Serializa
 	}
 	
 	private boolean verifyApplication(String appId) {
-		if(appId != null && !appId.trim().equals("")) { //$NON-NLS-1$
-			IApplicationProvider provider = new CloudApplicationProvider(m_authProvider);
-			if(provider.getApplications() != null && provider.getApplications().keySet().contains(appId))
-				return true;
-		}
+		if(appId != null && !appId.trim().equals("") && ApplicationIndex.contains(m_authProvider, getClient(), appId)) //$NON-NLS-1$
+			return true;
 		m_progress.setStatus(new Message(Message.ERROR, Messages.getMessage(ERROR_INVALID_APP, appId)));
 		return false;
 	}
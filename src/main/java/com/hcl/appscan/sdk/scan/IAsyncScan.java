@@ -0,0 +1,32 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.scan;
+
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
+import com.hcl.appscan.sdk.results.IResultsProvider;
+
+/**
+ * A scan that can be run without blocking the calling thread.
+ */
+public interface IAsyncScan extends IScan {
+
+	/**
+	 * Runs the scan on a thread of its own, from
+	 * {@link com.hcl.appscan.sdk.concurrent.AsyncExecutor#supplyLongRunning(java.util.concurrent.Callable)}, so that
+	 * it does not hold a thread of the shared pool for the length of the scan.
+	 *
+	 * @return The id of the scan. The result fails with a ScannerException or InvalidTargetException if the
+	 * scan could not be started.
+	 */
+	public AsyncResult<String> runAsync();
+
+	/**
+	 * Waits for the scan to finish running.
+	 *
+	 * @return The {@link IResultsProvider} for the completed scan.
+	 */
+	public AsyncResult<IResultsProvider> awaitCompletion();
+}
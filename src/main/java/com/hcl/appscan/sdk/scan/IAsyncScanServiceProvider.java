@@ -0,0 +1,44 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.scan;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.wink.json4j.JSONObject;
+
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
+
+/**
+ * A provider of scanning services whose operations can be started without waiting for them to complete.
+ */
+public interface IAsyncScanServiceProvider extends IScanServiceProvider {
+
+	/**
+	 * Creates and executes a scan.
+	 *
+	 * @param type The type of scan to execute. For example DynamicAnalyzer, MobileAnalyzer, or StaticAnalyzer.
+	 * @param params A Map of scan parameters.
+	 * @return The id of the submitted scan. The result holds null if the scan was not created.
+	 */
+	public AsyncResult<String> createAndExecuteScanAsync(String type, Map<String, String> params);
+
+	/**
+	 * Submits a file for scanning.
+	 *
+	 * @param file The file to submit.
+	 * @return The id of the submitted file. The result holds null if the upload was rejected.
+	 */
+	public AsyncResult<String> submitFileAsync(File file);
+
+	/**
+	 * Waits for a scan to finish running.
+	 *
+	 * @param scanId The id of the scan.
+	 * @return The detailed description of the scan, once it is no longer running.
+	 */
+	public AsyncResult<JSONObject> awaitCompletion(String scanId);
+}
@@ -0,0 +1,332 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.scan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wink.json4j.JSONException;
+import org.apache.wink.json4j.JSONObject;
+
+import com.hcl.appscan.sdk.CoreConstants;
+import com.hcl.appscan.sdk.Messages;
+import com.hcl.appscan.sdk.auth.IAuthenticationProvider;
+import com.hcl.appscan.sdk.concurrent.AsyncExecutor;
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
+import com.hcl.appscan.sdk.concurrent.ICallback;
+
+/**
+ * Watches any number of scans from a single scheduler thread and reports when each one stops running.
+ * <p>
+ * Each scan is checked soon after it is submitted, when short scans and early failures are likely. The interval
+ * then doubles on every check that finds the scan still running, up to a maximum. When several scans of the same
+ * server and login are due at the same time, their statuses are read together with
+ * {@link CloudScanServiceProvider#getScanStatuses(java.util.Collection)} instead of one request per scan, and only
+ * the scans that have stopped running are read in full.
+ * <p>
+ * The intervals, in seconds, can be changed with the "ScanPollInitial" and "ScanPollMax" system properties.
+ */
+public final class ScanStatusPoller implements CoreConstants {
+
+	private static final String INITIAL_PROPERTY = "ScanPollInitial"; //$NON-NLS-1$
+	private static final String MAX_PROPERTY = "ScanPollMax"; //$NON-NLS-1$
+	private static final long DEFAULT_INITIAL = 5;
+	private static final long DEFAULT_MAX = 300;
+	private static final long TICK = 1000;
+	// Below this many due scans, individual requests are as cheap as a filtered one.
+	private static final int BATCH_MIN = 3;
+	private static final int MAX_ERRORS = 3;
+
+	private static final ScanStatusPoller DEFAULT = new ScanStatusPoller();
+
+	private final long m_initial = Long.getLong(INITIAL_PROPERTY, DEFAULT_INITIAL) * 1000;
+	private final long m_max = Math.max(m_initial, Long.getLong(MAX_PROPERTY, DEFAULT_MAX) * 1000);
+	private final Map<Key, Watch> m_watches = new HashMap<Key, Watch>();
+	private final ScheduledExecutorService m_scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "AppScan scan poller"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private ScheduledFuture<?> m_tick;
+
+	private ScanStatusPoller() {
+	}
+
+	/**
+	 * Gets the poller shared by all scans in this JVM.
+	 *
+	 * @return The shared {@link ScanStatusPoller}.
+	 */
+	public static ScanStatusPoller getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Starts watching a scan. Watching a scan that is already being watched returns the same result.
+	 *
+	 * @param provider The {@link IScanServiceProvider} that owns the scan.
+	 * @param scanId The id of the scan.
+	 * @return The detailed description of the scan, once it is no longer running.
+	 */
+	public synchronized AsyncResult<JSONObject> watch(IScanServiceProvider provider, String scanId) {
+		Key key = new Key(provider, scanId);
+		Watch watch = m_watches.get(key);
+		if(watch == null) {
+			watch = new Watch(key, provider, scanId);
+			m_watches.put(key, watch);
+			if(m_tick == null)
+				m_tick = m_scheduler.scheduleWithFixedDelay(new Runnable() {
+					@Override
+					public void run() {
+						tick();
+					}
+				}, TICK, TICK, TimeUnit.MILLISECONDS);
+		}
+		return watch.m_result;
+	}
+
+	/**
+	 * Starts watching a scan and reports its completion to a callback.
+	 *
+	 * @param provider The {@link IScanServiceProvider} that owns the scan.
+	 * @param scanId The id of the scan.
+	 * @param callback Receives the detailed description of the scan, once it is no longer running.
+	 */
+	public void watch(IScanServiceProvider provider, String scanId, ICallback<? super JSONObject> callback) {
+		watch(provider, scanId).addCallback(callback);
+	}
+
+	/**
+	 * Stops watching a scan. Its result is cancelled.
+	 *
+	 * @param provider The {@link IScanServiceProvider} that owns the scan.
+	 * @param scanId The id of the scan.
+	 */
+	public void cancel(IScanServiceProvider provider, String scanId) {
+		Watch watch;
+		synchronized (this) {
+			watch = m_watches.remove(new Key(provider, scanId));
+		}
+		if(watch != null)
+			watch.m_result.cancel(false);
+	}
+
+	/**
+	 * @return The number of scans being watched.
+	 */
+	public synchronized int getWatchCount() {
+		return m_watches.size();
+	}
+
+	private void tick() {
+		Map<Account, List<Watch>> due = new HashMap<Account, List<Watch>>();
+		synchronized (this) {
+			if(m_watches.isEmpty()) {
+				m_tick.cancel(false);
+				m_tick = null;
+				return;
+			}
+
+			long now = System.currentTimeMillis();
+			for(Iterator<Watch> watches = m_watches.values().iterator(); watches.hasNext();) {
+				Watch watch = watches.next();
+				// The caller may have cancelled the result.
+				if(watch.m_result.isDone()) {
+					watches.remove();
+					continue;
+				}
+				if(watch.m_inFlight || watch.m_next > now)
+					continue;
+				watch.m_inFlight = true;
+				List<Watch> group = due.get(watch.m_key.m_account);
+				if(group == null)
+					due.put(watch.m_key.m_account, group = new ArrayList<Watch>());
+				group.add(watch);
+			}
+		}
+
+		// The requests run on the shared pool so that a slow response does not hold up the schedule.
+		for(final List<Watch> group : due.values()) {
+			// Scans of the same account can be checked through any of their providers.
+			final IScanServiceProvider provider = group.get(0).m_provider;
+			if(group.size() >= BATCH_MIN && provider instanceof CloudScanServiceProvider) {
+				AsyncExecutor.getExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						pollBatch((CloudScanServiceProvider)provider, group);
+					}
+				});
+			}
+			else {
+				for(final Watch watch : group) {
+					AsyncExecutor.getExecutor().execute(new Runnable() {
+						@Override
+						public void run() {
+							poll(watch);
+						}
+					});
+				}
+			}
+		}
+	}
+
+	private void poll(Watch watch) {
+		try {
+			update(watch, watch.m_provider.getScanDetails(watch.m_scanId));
+		} catch (IOException | JSONException | RuntimeException e) {
+			error(watch, e);
+		}
+	}
+
+	private void pollBatch(CloudScanServiceProvider provider, List<Watch> watches) {
+		Set<String> ids = new HashSet<String>();
+		for(Watch watch : watches)
+			ids.add(watch.m_scanId);
+
+		Map<String, String> statuses;
+		try {
+			statuses = provider.getScanStatuses(ids);
+		} catch (IOException | JSONException | RuntimeException e) {
+			statuses = null;
+		}
+
+		for(Watch watch : watches) {
+			String status = statuses == null ? null : statuses.get(watch.m_scanId);
+			if(status != null && status.equalsIgnoreCase(RUNNING))
+				running(watch);
+			else
+				// Finished, or not found: the result needs the full description of the scan.
+				poll(watch);
+		}
+	}
+
+	private void update(Watch watch, JSONObject details) {
+		if(details == null) {
+			error(watch, new IOException(Messages.getMessage(ERROR_GETTING_DETAILS, watch.m_scanId)));
+			return;
+		}
+
+		String status;
+		try {
+			status = details.getJSONObject(LATEST_EXECUTION).getString(STATUS);
+		} catch (JSONException e) {
+			error(watch, e);
+			return;
+		}
+
+		if(status != null && !status.equalsIgnoreCase(RUNNING)) {
+			remove(watch);
+			watch.m_result.complete(details);
+			return;
+		}
+		running(watch);
+	}
+
+	private synchronized void running(Watch watch) {
+		watch.m_errors = 0;
+		watch.m_interval = Math.min(watch.m_interval * 2, m_max);
+		watch.m_next = System.currentTimeMillis() + watch.m_interval;
+		watch.m_inFlight = false;
+	}
+
+	private void error(Watch watch, Exception e) {
+		synchronized (this) {
+			if(++watch.m_errors < MAX_ERRORS) {
+				watch.m_next = System.currentTimeMillis() + watch.m_interval;
+				watch.m_inFlight = false;
+				return;
+			}
+		}
+		remove(watch);
+		watch.m_result.fail(e);
+	}
+
+	private synchronized void remove(Watch watch) {
+		if(m_watches.get(watch.m_key) == watch)
+			m_watches.remove(watch.m_key);
+	}
+
+	/**
+	 * The server and login a scan belongs to. Each scan usually gets its own {@link IScanServiceProvider}, but
+	 * scans started with the same {@link IAuthenticationProvider} can be checked together.
+	 */
+	private static final class Account {
+		private final String m_server;
+		private final IAuthenticationProvider m_authProvider;
+
+		Account(IScanServiceProvider provider) {
+			m_authProvider = provider.getAuthenticationProvider();
+			m_server = m_authProvider == null ? null : m_authProvider.getServer();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Account))
+				return false;
+			Account other = (Account)obj;
+			return m_authProvider == other.m_authProvider && (m_server == null ? other.m_server == null : m_server.equals(other.m_server));
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(m_authProvider) * 31 + (m_server == null ? 0 : m_server.hashCode());
+		}
+	}
+
+	private static final class Key {
+		private final Account m_account;
+		private final String m_scanId;
+
+		Key(IScanServiceProvider provider, String scanId) {
+			m_account = new Account(provider);
+			m_scanId = scanId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key))
+				return false;
+			Key other = (Key)obj;
+			return m_account.equals(other.m_account) && m_scanId.equals(other.m_scanId);
+		}
+
+		@Override
+		public int hashCode() {
+			return m_account.hashCode() * 31 + m_scanId.hashCode();
+		}
+	}
+
+	private class Watch {
+		private final Key m_key;
+		private final IScanServiceProvider m_provider;
+		private final String m_scanId;
+		private final AsyncResult<JSONObject> m_result = new AsyncResult<JSONObject>();
+		private long m_interval = m_initial;
+		private long m_next = System.currentTimeMillis() + m_initial;
+		private boolean m_inFlight;
+		private int m_errors;
+
+		Watch(Key key, IScanServiceProvider provider, String scanId) {
+			m_key = key;
+			m_provider = provider;
+			m_scanId = scanId;
+		}
+	}
+}
@@ -8,22 +8,30 @@ package com.hcl.appscan.sdk.scanners;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.wink.json4j.JSONObject;
 
 import com.hcl.appscan.sdk.CoreConstants;
+import com.hcl.appscan.sdk.Messages;
+import com.hcl.appscan.sdk.concurrent.AsyncExecutor;
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
+import com.hcl.appscan.sdk.concurrent.IFunction;
 import com.hcl.appscan.sdk.logging.DefaultProgress;
 import com.hcl.appscan.sdk.logging.IProgress;
 import com.hcl.appscan.sdk.results.CloudResultsProvider;
 import com.hcl.appscan.sdk.results.IResultsProvider;
-import com.hcl.appscan.sdk.scan.IScan;
+import com.hcl.appscan.sdk.scan.IAsyncScan;
+import com.hcl.appscan.sdk.scan.IAsyncScanServiceProvider;
 import com.hcl.appscan.sdk.scan.IScanServiceProvider;
 import com.hcl.appscan.sdk.utils.SystemUtil;
 
-public abstract class ASoCScan implements IScan, ScanConstants, Serializable {
+public abstract class ASoCScan implements IAsyncScan, ScanConstants, Serializable {
 	
 	private static final long serialVersionUID = 1L;
 	
 	private String m_target;
-	private String m_scanId;
+	private volatile String m_scanId;
 	private IProgress m_progress;
 	private IScanServiceProvider m_serviceProvider;
 	private Map<String, String> m_properties;
@@ -56,6 +64,33 @@ public abstract class ASoCScan implements IScan, ScanConstants, Serializable {
 		return provider;
 	}
 
+	@Override
+	public AsyncResult<String> runAsync() {
+		// A scan can run for a long time, so it gets its own thread rather than one of the shared pool.
+		return AsyncExecutor.supplyLongRunning(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				run();
+				return getScanId();
+			}
+		});
+	}
+	
+	@Override
+	public AsyncResult<IResultsProvider> awaitCompletion() {
+		if(m_scanId == null)
+			return AsyncResult.failed(new IllegalStateException(Messages.getMessage(ERROR_NOT_STARTED)));
+		if(!(m_serviceProvider instanceof IAsyncScanServiceProvider))
+			return AsyncResult.failed(new UnsupportedOperationException(Messages.getMessage(ERROR_ASYNC_UNSUPPORTED)));
+		
+		return ((IAsyncScanServiceProvider)m_serviceProvider).awaitCompletion(m_scanId).map(new IFunction<JSONObject, IResultsProvider>() {
+			@Override
+			public IResultsProvider apply(JSONObject details) {
+				return getResultsProvider();
+			}
+		});
+	}
+
 	protected void setScanId(String id) {
 		m_scanId = id;
 	}
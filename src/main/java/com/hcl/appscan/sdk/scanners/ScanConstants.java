@@ -17,4 +17,6 @@ public interface ScanConstants {
 	String ERROR_RUNNING_SCAN		= "error.running.scan";			//$NON-NLS-1$
 	String SCAN_FAILED				= "error.scan.failed";			//$NON-NLS-1$
 	String TARGET_INVALID			= "error.target.invalid";		//$NON-NLS-1$
+	String ERROR_NOT_STARTED		= "error.scan.not.started";		//$NON-NLS-1$
+	String ERROR_ASYNC_UNSUPPORTED	= "error.async.unsupported";	//$NON-NLS-1$
 }
@@ -7,6 +7,7 @@
 package com.hcl.appscan.sdk.scanners.sast;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FilenameFilter;
@@ -22,7 +23,6 @@ import com.hcl.appscan.sdk.error.ScannerException;
 import com.hcl.appscan.sdk.logging.DefaultProgress;
 import com.hcl.appscan.sdk.logging.IProgress;
 import com.hcl.appscan.sdk.logging.Message;
-import com.hcl.appscan.sdk.utils.ArchiveUtil;
 import com.hcl.appscan.sdk.utils.ServiceUtil;
 import com.hcl.appscan.sdk.utils.SystemUtil;
 
@@ -58,6 +58,18 @@ public class SAClient implements SASTConstants {
 		return runClient(workingDir, getClientArgs(properties));
 	}
 	
+	/**
+	 * Run the SAClient using a script that was already located, without checking the installed version.
+	 * @param script The absolute path to the "appscan" script, as returned by {@link #getClientScript()}.
+	 * @param workingDir The directory where the SAClient will run.
+	 * @param properties A Map of properties that will be converted to program arguments.
+	 * @return The process exit code, 0 for success.
+	 * @throws IOException
+	 */
+	int run(String script, String workingDir, Map<String, String> properties) throws IOException {
+		return runClient(script, workingDir, getClientArgs(properties));
+	}
+	
 	/**
 	 * @deprecated Use {@link #run(String, Map)} instead.
 	 */
@@ -67,14 +79,28 @@ public class SAClient implements SASTConstants {
 	}
 		
 	private int runClient(String workingDir, List<String> args) throws IOException, ScannerException {
+		return runClient(getClientScript(), workingDir, args);
+	}
+	
+	private int runClient(String script, String workingDir, List<String> args) throws IOException {
 		ArrayList<String> arguments = new ArrayList<String>();
-		arguments.add(getClientScript());
+		arguments.add(script);
 		arguments.addAll(args);
 		m_builder = new ProcessBuilder(arguments);
 		m_builder.directory(new File(workingDir));
 		m_builder.redirectErrorStream(true);
 		
 		m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(PREPARING_IRX, getLocalClientVersion())));
+		// The script is in the bin directory of the install.
+		Closeable lease = SAClientInstall.acquire(new File(script).getAbsoluteFile().getParentFile().getParentFile());
+		try {
+			return runProcess();
+		} finally {
+			lease.close();
+		}
+	}
+	
+	private int runProcess() throws IOException {
 		final Process proc = m_builder.start();
 		new Thread(new Runnable() {
 			@Override
@@ -101,6 +127,9 @@ public class SAClient implements SASTConstants {
 		try {
 			proc.waitFor();
 		} catch (InterruptedException e) {
+			// Don't leave the process running when the caller gives up on it.
+			proc.destroy();
+			Thread.currentThread().interrupt();
 			m_progress.setStatus(e);
 			return -1;
 		}
@@ -118,33 +147,46 @@ public class SAClient implements SASTConstants {
 	public String getClientScript() throws IOException, ScannerException {
 		//See if we already have the client package.
 		String scriptPath = "bin" + File.separator + getScriptName(); //$NON-NLS-1$
+		SAClientInstall installs = new SAClientInstall(m_installDir);
 		File install = findClientInstall();
 		
-		if(install != null && new File(install, scriptPath).isFile() && !shouldUpdateClient())
+		if(install != null && new File(install, scriptPath).isFile() && !shouldUpdateClient()) {
+			installs.cleanup(install);
 			return new File(install, scriptPath).getAbsolutePath();
-		
-		//Download it.
-		m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(DOWNLOADING_CLIENT)));
-		if(install != null && install.isDirectory())
-			deleteDirectory(install);
-		
-		File clientZip = new File(m_installDir, SACLIENT + ".zip"); //$NON-NLS-1$
-		if(clientZip.isFile())
-			clientZip.delete();
-		
-		try {
-			ServiceUtil.getSAClientUtil(clientZip);
-		} catch(OutOfMemoryError e) {
-			throw new ScannerException(Messages.getMessage(DOWNLOAD_OUT_OF_MEMORY));
-		} catch(IOException e) {
-			throw new ScannerException(Messages.getMessage(ERROR_DOWNLOADING_CLIENT, e.getLocalizedMessage()));
 		}
 		
-		if(clientZip.isFile()) {
-			m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(DOWNLOAD_COMPLETE)));
-			m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(EXTRACTING_CLIENT)));
-			ArchiveUtil.unzip(clientZip, m_installDir);
-			m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(DONE)));
+		Closeable lock = installs.lock();
+		try {
+			//Another process may have installed it while this one was waiting.
+			File current = installs.getCurrent();
+			if(current != null && !current.equals(install) && new File(current, scriptPath).isFile() && !shouldUpdateClient())
+				return new File(current, scriptPath).getAbsolutePath();
+			
+			//Download it.
+			m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(DOWNLOADING_CLIENT)));
+			File clientZip = new File(m_installDir, SACLIENT + ".zip"); //$NON-NLS-1$
+			if(clientZip.isFile())
+				clientZip.delete();
+			
+			try {
+				ServiceUtil.getSAClientUtil(clientZip);
+			} catch(OutOfMemoryError e) {
+				throw new ScannerException(Messages.getMessage(DOWNLOAD_OUT_OF_MEMORY));
+			} catch(IOException e) {
+				throw new ScannerException(Messages.getMessage(ERROR_DOWNLOADING_CLIENT, e.getLocalizedMessage()));
+			}
+			
+			if(clientZip.isFile()) {
+				m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(DOWNLOAD_COMPLETE)));
+				m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(EXTRACTING_CLIENT)));
+				//The new version goes next to the old one, which other processes may still be running.
+				install = installs.install(clientZip, install);
+				clientZip.delete();
+				m_progress.setStatus(new Message(Message.INFO, Messages.getMessage(DONE)));
+				installs.cleanup(install);
+			}
+		} finally {
+			lock.close();
 		}
 
 		return new File(findClientInstall(), scriptPath).getAbsolutePath();
@@ -155,7 +197,10 @@ public class SAClient implements SASTConstants {
 	}
 	
 	private boolean shouldUpdateClient() throws IOException {
-		String serverVersion = ServiceUtil.getSAClientVersion();
+		if(SAClientVersionCache.isOffline())
+			return false;
+		
+		String serverVersion = new SAClientVersionCache(m_installDir).getServerVersion();
 		String localVersion = getLocalClientVersion();
 
 		if(localVersion != null && serverVersion != null) {
@@ -181,6 +226,11 @@ public class SAClient implements SASTConstants {
 		if(!m_installDir.isDirectory())
 			return null;
 		
+		File current = new SAClientInstall(m_installDir).getCurrent();
+		if(current != null)
+			return current;
+		
+		//An install from before versions were kept side by side.
 		File files[] = m_installDir.listFiles(new FilenameFilter() {
 			public boolean accept(File dir, String name) {
 				return name.startsWith(SACLIENT) && new File(dir, name).isDirectory();
@@ -209,19 +259,6 @@ public class SAClient implements SASTConstants {
 		return version;
 	}
 	
-	private void deleteDirectory(File directory) {
-		if(!directory.isDirectory())
-			directory.delete();
-		
-		for(File file : directory.listFiles()) {
-			if(file.isDirectory())
-				deleteDirectory(file);
-			else
-				file.delete();
-		}
-		directory.delete();
-	}
-	
 	/**
 	 * Given a Map of properties, returns a List of arguments.
 	 * @param properties The Map of properties.
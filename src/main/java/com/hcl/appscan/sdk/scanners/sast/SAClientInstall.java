@@ -0,0 +1,343 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.scanners.sast;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.hcl.appscan.sdk.utils.ArchiveUtil;
+
+/**
+ * Manages side by side installs of the SAClientUtil package in a directory that several processes can share.
+ * <p>
+ * Each version is extracted to its own directory, and a pointer file names the current one. Only one process
+ * at a time downloads and extracts, while holding a lock on a file in the install directory, and the pointer is
+ * replaced atomically once the new version is complete. A process holds a shared lock on a lease file for each
+ * version it runs, and a version that is no longer current is deleted only when no process holds its lease and
+ * it has not been used for a while.
+ */
+final class SAClientInstall {
+
+	private static final String SACLIENT = "SAClientUtil"; //$NON-NLS-1$
+	private static final String POINTER = "saclient.current"; //$NON-NLS-1$
+	private static final String INSTALL_LOCK = "saclient.install.lock"; //$NON-NLS-1$
+	private static final String LEASE_DIR = ".leases"; //$NON-NLS-1$
+	private static final String LEASE_EXTENSION = ".lock"; //$NON-NLS-1$
+	private static final String STAGING = ".staging-"; //$NON-NLS-1$
+	// A version is kept this long after its last use, or after it stopped being current, so that a process that
+	// located it just before the switch can still take a lease on it.
+	private static final long GRACE = 10 * 60 * 1000L;
+
+	// File locks are held per process, so threads of this process are serialized separately.
+	private static final ReentrantLock INSTALL = new ReentrantLock();
+	private static final Map<String, Lease> LEASES = new HashMap<String, Lease>();
+
+	private final File m_installDir;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param installDir The directory that holds the installs.
+	 */
+	SAClientInstall(File installDir) {
+		m_installDir = installDir;
+	}
+
+	/**
+	 * Gets the current install.
+	 *
+	 * @return The directory of the current version, or null if no version was installed side by side.
+	 */
+	File getCurrent() {
+		File pointer = new File(m_installDir, POINTER);
+		if(!pointer.isFile())
+			return null;
+		try {
+			String name = new String(Files.readAllBytes(pointer.toPath()), StandardCharsets.UTF_8).trim();
+			File install = new File(m_installDir, name);
+			return name.isEmpty() || !install.isDirectory() ? null : install;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Waits until this process is the only one updating the installs. Updates should check again whether they are
+	 * still needed once the lock is held, since another process may have just finished the same update.
+	 *
+	 * @return The lock, to close once the update is done.
+	 * @throws IOException If the lock could not be taken.
+	 */
+	Closeable lock() throws IOException {
+		try {
+			INSTALL.lockInterruptibly();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getLocalizedMessage());
+		}
+
+		final FileChannel channel;
+		final FileLock lock;
+		try {
+			Files.createDirectories(m_installDir.toPath());
+			channel = FileChannel.open(new File(m_installDir, INSTALL_LOCK).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			try {
+				lock = channel.lock();
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		} catch (IOException | RuntimeException e) {
+			INSTALL.unlock();
+			throw e;
+		}
+
+		return new Closeable() {
+			@Override
+			public void close() throws IOException {
+				try {
+					lock.release();
+					channel.close();
+				} finally {
+					INSTALL.unlock();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Extracts a package to a directory of its own and makes it the current install. Must be called while holding
+	 * {@link #lock()}.
+	 *
+	 * @param archive The downloaded package.
+	 * @param previous The install being replaced, or null if there is none.
+	 * @return The directory of the new install.
+	 * @throws IOException If the package could not be extracted.
+	 */
+	File install(File archive, File previous) throws IOException {
+		File staging = new File(m_installDir, STAGING + System.currentTimeMillis());
+		try {
+			ArchiveUtil.unzip(archive, staging);
+
+			// The package holds a single SAClientUtil.<version> directory.
+			File[] extracted = staging.listFiles(new FilenameFilter() {
+				@Override
+				public boolean accept(File dir, String name) {
+					return name.startsWith(SACLIENT) && new File(dir, name).isDirectory();
+				}
+			});
+			File source = extracted != null && extracted.length == 1 ? extracted[0] : staging;
+			String name = source == staging ? SACLIENT : source.getName();
+			File install = new File(m_installDir, name);
+			// The same version is installed again if the existing copy was damaged. It may still be in use.
+			if(install.exists())
+				install = new File(m_installDir, name + "_" + System.currentTimeMillis()); //$NON-NLS-1$
+			move(source.toPath(), install.toPath());
+			setCurrent(install, previous);
+			return install;
+		} finally {
+			if(staging.exists())
+				deleteDirectory(staging);
+		}
+	}
+
+	/**
+	 * Deletes the versions that are no longer current and that no process is using. Does nothing if another
+	 * process is updating the installs.
+	 *
+	 * @param current The current install, which is kept.
+	 */
+	void cleanup(File current) {
+		// Versions are only managed here once one was installed side by side.
+		if(current == null || !current.equals(getCurrent()))
+			return;
+		File[] installs = m_installDir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return (name.startsWith(SACLIENT) || name.startsWith(STAGING)) && new File(dir, name).isDirectory();
+			}
+		});
+		if(installs == null || installs.length <= 1 || !INSTALL.tryLock())
+			return;
+
+		try(FileChannel channel = FileChannel.open(new File(m_installDir, INSTALL_LOCK).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			FileLock lock = channel.tryLock();
+			if(lock == null)
+				return;
+			try {
+				for(File install : installs) {
+					// Staging directories are only in use while the lock is held.
+					if(install.getName().startsWith(STAGING))
+						deleteDirectory(install);
+					else if(!install.equals(current))
+						deleteUnused(install);
+				}
+			} finally {
+				lock.release();
+			}
+		} catch (IOException | OverlappingFileLockException e) {
+			// Cleaned up next time.
+		} finally {
+			INSTALL.unlock();
+		}
+	}
+
+	/**
+	 * Takes a lease on an install for as long as a process runs from it, so that it is not deleted while in use.
+	 *
+	 * @param install The directory of the install.
+	 * @return The lease, to close once the install is no longer used.
+	 * @throws IOException If the install no longer exists.
+	 */
+	static Closeable acquire(File install) throws IOException {
+		String key = install.getAbsolutePath();
+		synchronized (LEASES) {
+			Lease lease = LEASES.get(key);
+			if(lease == null) {
+				File file = getLeaseFile(install);
+				Files.createDirectories(file.getParentFile().toPath());
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				try {
+					// Waits while another process is deleting the install.
+					FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+					if(!install.isDirectory()) {
+						lock.release();
+						throw new FileNotFoundException(key);
+					}
+					lease = new Lease(key, channel, lock);
+				} catch (OverlappingFileLockException e) {
+					// This process is deleting the install.
+					channel.close();
+					throw new FileNotFoundException(key);
+				} catch (IOException | RuntimeException e) {
+					channel.close();
+					throw e;
+				}
+				LEASES.put(key, lease);
+			}
+			lease.m_count++;
+			// Records the last use, for the grace period.
+			getLeaseFile(install).setLastModified(System.currentTimeMillis());
+			return lease;
+		}
+	}
+
+	/**
+	 * Points to a new current install, replacing the pointer file atomically.
+	 */
+	private void setCurrent(File install, File previous) throws IOException {
+		Path temp = Files.createTempFile(m_installDir.toPath(), POINTER, ".tmp"); //$NON-NLS-1$
+		try {
+			Files.write(temp, install.getName().getBytes(StandardCharsets.UTF_8));
+			move(temp, new File(m_installDir, POINTER).toPath());
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		// Starts the grace period of the version that was replaced.
+		if(previous != null && !previous.equals(install)) {
+			File lease = getLeaseFile(previous);
+			if(lease.isFile())
+				lease.setLastModified(System.currentTimeMillis());
+			else {
+				Files.createDirectories(lease.getParentFile().toPath());
+				lease.createNewFile();
+			}
+		}
+	}
+
+	private void deleteUnused(File install) throws IOException {
+		synchronized (LEASES) {
+			if(LEASES.containsKey(install.getAbsolutePath()))
+				return;
+		}
+
+		File file = getLeaseFile(install);
+		if(file.isFile() && System.currentTimeMillis() - file.lastModified() < GRACE)
+			return;
+
+		Files.createDirectories(file.getParentFile().toPath());
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			FileLock lock = channel.tryLock();
+			if(lock == null)
+				return;
+			try {
+				deleteDirectory(install);
+			} finally {
+				lock.release();
+			}
+		}
+		file.delete();
+	}
+
+	private static File getLeaseFile(File install) {
+		return new File(new File(install.getAbsoluteFile().getParentFile(), LEASE_DIR), install.getName() + LEASE_EXTENSION);
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void deleteDirectory(File directory) {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				if(file.isDirectory())
+					deleteDirectory(file);
+				else
+					file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static class Lease implements Closeable {
+		private final String m_key;
+		private final FileChannel m_channel;
+		private final FileLock m_lock;
+		private int m_count;
+
+		Lease(String key, FileChannel channel, FileLock lock) {
+			m_key = key;
+			m_channel = channel;
+			m_lock = lock;
+		}
+
+		@Override
+		public void close() throws IOException {
+			synchronized (LEASES) {
+				if(m_count == 0 || --m_count > 0)
+					return;
+				LEASES.remove(m_key);
+			}
+			try {
+				m_lock.release();
+			} finally {
+				m_channel.close();
+			}
+		}
+	}
+}
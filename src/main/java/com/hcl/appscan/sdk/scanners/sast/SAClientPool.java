@@ -0,0 +1,203 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.scanners.sast;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import com.hcl.appscan.sdk.Messages;
+import com.hcl.appscan.sdk.error.ScannerException;
+import com.hcl.appscan.sdk.logging.IProgress;
+import com.hcl.appscan.sdk.logging.Message;
+import com.hcl.appscan.sdk.utils.SystemUtil;
+
+/**
+ * Runs SAClient jobs for the whole JVM, optionally with a limit on how many processes run at once.
+ * <p>
+ * Locating the SAClient and checking its version against the service is done once and shared by every job,
+ * rather than before each process is started. The install is checked before each job and located again if it is
+ * no longer usable, and after a number of jobs so that a newer version is picked up. A process that crashes or is
+ * killed is started again once, unless it was interrupted or asked to terminate.
+ * <p>
+ * The number of processes and the number of jobs between version checks can be set with the "SAClientWorkers"
+ * and "SAClientRecycle" system properties. By default the number of processes is not limited here; the shards of a
+ * single scan are still prepared at most as many at once as the machine allows.
+ */
+public class SAClientPool implements SASTConstants {
+
+	private static final String WORKERS_PROPERTY = "SAClientWorkers"; //$NON-NLS-1$
+	private static final String RECYCLE_PROPERTY = "SAClientRecycle"; //$NON-NLS-1$
+	private static final int DEFAULT_RECYCLE = 50;
+	private static final int MAX_ATTEMPTS = 2;
+	// Exit codes above this mean the process was ended by a signal, such as a crash or the out of memory killer.
+	private static final int SIGNAL_EXIT = 128;
+	// Ended by SIGINT or SIGTERM, which is a request to stop rather than a failure.
+	private static final int SIGINT_EXIT = SIGNAL_EXIT + 2;
+	private static final int SIGTERM_EXIT = SIGNAL_EXIT + 15;
+	private static final String VERSION_INFO = "version.info"; //$NON-NLS-1$
+
+	private static SAClientPool s_default;
+
+	private final Semaphore m_permits;
+	private final int m_size;
+	private final int m_recycleAfter;
+	private String m_script;
+	private int m_jobs;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param size The maximum number of SAClient processes that run at once, or 0 for no limit.
+	 * @param recycleAfter The number of jobs after which the install is located and checked again.
+	 */
+	public SAClientPool(int size, int recycleAfter) {
+		m_size = size > 0 ? size : Integer.MAX_VALUE;
+		m_permits = new Semaphore(m_size, true);
+		m_recycleAfter = Math.max(1, recycleAfter);
+	}
+
+	/**
+	 * Gets the pool shared by all scans in this JVM.
+	 *
+	 * @return The default {@link SAClientPool}.
+	 */
+	public static synchronized SAClientPool getDefault() {
+		if(s_default == null)
+			s_default = new SAClientPool(Integer.getInteger(WORKERS_PROPERTY, 0),
+					Integer.getInteger(RECYCLE_PROPERTY, DEFAULT_RECYCLE));
+		return s_default;
+	}
+
+	/**
+	 * @return The maximum number of SAClient processes that run at once, or {@link Integer#MAX_VALUE} if there is no
+	 * limit.
+	 */
+	public int getSize() {
+		return m_size;
+	}
+
+	/**
+	 * Runs the SAClient, waiting for a free slot first.
+	 *
+	 * @param progress The {@link IProgress} that receives the output of the process.
+	 * @param workingDir The directory where the SAClient will run.
+	 * @param properties A Map of properties that will be converted to program arguments.
+	 * @return The process exit code, 0 for success.
+	 * @throws IOException If the process could not be started, or the thread was interrupted while waiting.
+	 * @throws ScannerException If the SAClient could not be installed.
+	 */
+	public int run(IProgress progress, String workingDir, Map<String, String> properties) throws IOException, ScannerException {
+		try {
+			m_permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getLocalizedMessage());
+		}
+
+		try {
+			int exitCode = -1;
+			for(int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+				exitCode = runOnce(progress, workingDir, properties);
+				if(!isRetryable(exitCode) || attempt == MAX_ATTEMPTS || Thread.currentThread().isInterrupted())
+					break;
+				progress.setStatus(new Message(Message.INFO, Messages.getMessage(SACLIENT_RETRY, exitCode)));
+			}
+			return exitCode;
+		} finally {
+			m_permits.release();
+		}
+	}
+
+	private int runOnce(IProgress progress, String workingDir, Map<String, String> properties) throws IOException, ScannerException {
+		String script = getScript(progress);
+		try {
+			return new SAClient(progress).run(script, workingDir, properties);
+		} catch (FileNotFoundException e) {
+			// The install was retired by another process after it was located. Locate the current one.
+			invalidate(script);
+			return new SAClient(progress).run(getScript(progress), workingDir, properties);
+		}
+	}
+
+	private static boolean isRetryable(int exitCode) {
+		return exitCode > SIGNAL_EXIT && exitCode != SIGINT_EXIT && exitCode != SIGTERM_EXIT;
+	}
+
+	/**
+	 * Forgets the located install, so that the next job locates it and checks its version again.
+	 */
+	public synchronized void invalidate() {
+		m_script = null;
+	}
+
+	private synchronized void invalidate(String script) {
+		// Another job may have located the current install already.
+		if(script.equals(m_script))
+			m_script = null;
+	}
+
+	/**
+	 * Gets the version of the install that the next job would run, locating it first if needed.
+	 *
+	 * @param progress The {@link IProgress} that receives the output of the download, if the install is updated.
+	 * @return The version, or null if it could not be read.
+	 * @throws IOException If the install could not be located.
+	 * @throws ScannerException If the SAClient could not be installed.
+	 */
+	String getVersion(IProgress progress) throws IOException, ScannerException {
+		File versionInfo = new File(getInstall(locate(progress)), VERSION_INFO);
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(versionInfo), StandardCharsets.UTF_8));
+			//The version is the first line of the version.info file.
+			String version = reader.readLine();
+			return version == null || version.trim().isEmpty() ? null : version.trim();
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if(reader != null)
+				reader.close();
+		}
+	}
+
+	private synchronized String getScript(IProgress progress) throws IOException, ScannerException {
+		String script = locate(progress);
+		m_jobs++;
+		return script;
+	}
+
+	private synchronized String locate(IProgress progress) throws IOException, ScannerException {
+		if(m_script == null || m_jobs >= m_recycleAfter || !isHealthy(m_script)) {
+			m_script = new SAClient(progress).getClientScript();
+			m_jobs = 0;
+		}
+		return m_script;
+	}
+
+	// The script is in the bin directory of the install.
+	private static File getInstall(String script) {
+		return new File(script).getAbsoluteFile().getParentFile().getParentFile();
+	}
+
+	/**
+	 * Checks that the install was not removed or damaged since it was located.
+	 */
+	private static boolean isHealthy(String script) {
+		File file = new File(script);
+		if(!file.isFile() || (!SystemUtil.isWindows() && !file.canExecute()))
+			return false;
+		File install = getInstall(script);
+		return install != null && new File(install, VERSION_INFO).isFile();
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.scanners.sast;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.wink.json4j.JSONArtifact;
+import org.apache.wink.json4j.JSONException;
+import org.apache.wink.json4j.JSONObject;
+
+import com.hcl.appscan.sdk.CoreConstants;
+import com.hcl.appscan.sdk.concurrent.AsyncExecutor;
+import com.hcl.appscan.sdk.http.HttpClient;
+import com.hcl.appscan.sdk.http.HttpResponse;
+import com.hcl.appscan.sdk.utils.ServiceUtil;
+
+/**
+ * Remembers the latest SAClientUtil version available on the server, in a file next to the installed package, so
+ * that every process sharing the install does not have to ask the server before each scan.
+ * <p>
+ * A remembered version is used as is. Once it is older than a time to live, in seconds, set with the
+ * "SAClientVersionTTL" system property, it is still used, but checked again on the shared
+ * {@link AsyncExecutor} with a conditional request, so a newer package is picked up by the next scan. Setting
+ * the "SAClientOffline" system property to true skips the check entirely and always uses the installed package.
+ */
+final class SAClientVersionCache implements CoreConstants {
+
+	private static final String TTL_PROPERTY = "SAClientVersionTTL"; //$NON-NLS-1$
+	private static final String OFFLINE_PROPERTY = "SAClientOffline"; //$NON-NLS-1$
+	private static final long DEFAULT_TTL = 3600;
+	private static final String CACHE_FILE = "saclient.version.properties"; //$NON-NLS-1$
+	private static final String KEY_SERVER = "server"; //$NON-NLS-1$
+	private static final String KEY_VERSION = "version"; //$NON-NLS-1$
+	private static final String KEY_ETAG = "etag"; //$NON-NLS-1$
+	private static final String KEY_CHECKED = "checked"; //$NON-NLS-1$
+	private static final String ETAG = "ETag"; //$NON-NLS-1$
+	private static final String IF_NONE_MATCH = "If-None-Match"; //$NON-NLS-1$
+
+	// The cache files being checked in the background, so each is checked once at a time.
+	private static final Set<String> REFRESHING = Collections.synchronizedSet(new HashSet<String>());
+
+	private final File m_file;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param installDir The directory the SAClientUtil package is installed in.
+	 */
+	SAClientVersionCache(File installDir) {
+		m_file = new File(installDir, CACHE_FILE);
+	}
+
+	/**
+	 * @return True if the installed package should be used without checking for a newer one.
+	 */
+	static boolean isOffline() {
+		return Boolean.getBoolean(OFFLINE_PROPERTY);
+	}
+
+	/**
+	 * Gets the latest version of the SAClientUtil package, asking the server only if no version is remembered
+	 * for it.
+	 *
+	 * @return The version, or null if the server did not provide one.
+	 * @throws IOException If the server could not be reached.
+	 */
+	String getServerVersion() throws IOException {
+		String url = ServiceUtil.getSAClientVersionUrl();
+		Properties cached = load();
+		if(cached != null && url.equals(cached.getProperty(KEY_SERVER)) && cached.getProperty(KEY_VERSION) != null) {
+			if(isExpired(cached))
+				refreshInBackground(url, cached);
+			return cached.getProperty(KEY_VERSION);
+		}
+		return refresh(url, null);
+	}
+
+	/**
+	 * Forgets the remembered version.
+	 */
+	void clear() {
+		m_file.delete();
+	}
+
+	private String refresh(String url, Properties cached) throws IOException {
+		Map<String, String> headers = new HashMap<String, String>();
+		String etag = cached == null ? null : cached.getProperty(KEY_ETAG);
+		if(etag != null)
+			headers.put(IF_NONE_MATCH, etag);
+
+		HttpResponse response = HttpClient.getDefault().get(url, headers, null);
+		int status = response.getResponseCode();
+		String version;
+		if(status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+			response.close();
+			version = cached.getProperty(KEY_VERSION);
+		}
+		else if(status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_CREATED) {
+			try {
+				JSONArtifact responseContent = response.getResponseBodyAsJSON();
+				if(responseContent == null)
+					return null;
+				version = ((JSONObject)responseContent).getString(VERSION_NUMBER);
+			} catch (JSONException e) {
+				// Matches ServiceUtil.getSAClientVersion(). Not remembered, so the server is asked again.
+				return "0"; //$NON-NLS-1$
+			}
+			etag = getHeader(response, ETAG);
+		}
+		else {
+			response.close();
+			return null;
+		}
+
+		store(url, version, etag);
+		return version;
+	}
+
+	private void refreshInBackground(final String url, final Properties cached) {
+		final String key = m_file.getAbsolutePath();
+		if(!REFRESHING.add(key))
+			return;
+		AsyncExecutor.getExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refresh(url, cached);
+				} catch (IOException | RuntimeException e) {
+					// The remembered version is used until a check succeeds.
+				} finally {
+					REFRESHING.remove(key);
+				}
+			}
+		});
+	}
+
+	private static boolean isExpired(Properties cached) {
+		long checked;
+		try {
+			checked = Long.parseLong(cached.getProperty(KEY_CHECKED, "0")); //$NON-NLS-1$
+		} catch (NumberFormatException e) {
+			checked = 0;
+		}
+		long age = System.currentTimeMillis() - checked;
+		return age < 0 || age >= Long.getLong(TTL_PROPERTY, DEFAULT_TTL) * 1000;
+	}
+
+	private Properties load() {
+		if(!m_file.isFile())
+			return null;
+		Properties properties = new Properties();
+		try(InputStream input = Files.newInputStream(m_file.toPath())) {
+			properties.load(input);
+			return properties;
+		} catch (IOException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the file to a temporary file and moves it into place, so other processes never read a partial file.
+	 */
+	private void store(String url, String version, String etag) {
+		if(version == null)
+			return;
+		Properties properties = new Properties();
+		properties.setProperty(KEY_SERVER, url);
+		properties.setProperty(KEY_VERSION, version);
+		properties.setProperty(KEY_CHECKED, Long.toString(System.currentTimeMillis()));
+		if(etag != null)
+			properties.setProperty(KEY_ETAG, etag);
+
+		Path temp = null;
+		try {
+			Path dir = m_file.getAbsoluteFile().getParentFile().toPath();
+			Files.createDirectories(dir);
+			temp = Files.createTempFile(dir, CACHE_FILE, ".tmp"); //$NON-NLS-1$
+			try(OutputStream output = Files.newOutputStream(temp)) {
+				properties.store(output, null);
+			}
+			try {
+				Files.move(temp, m_file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, m_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// Only means the server is asked again next time.
+			if(temp != null)
+				temp.toFile().delete();
+		}
+	}
+
+	private static String getHeader(HttpResponse response, String name) {
+		Map<String, List<String>> headers = response.getResponseHeaders();
+		if(headers == null)
+			return null;
+		for(Map.Entry<String, List<String>> header : headers.entrySet()) {
+			if(name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty())
+				return header.getValue().get(0);
+		}
+		return null;
+	}
+}
@@ -42,6 +42,8 @@ public interface SASTConstants {
 	String EXTRACTING_CLIENT			= "message.extracting.client";		//$NON-NLS-1$
 	String PREPARING_IRX				= "message.preparing.irx";			//$NON-NLS-1$
 	String SACLIENT_OUTDATED			= "message.saclient.old";			//$NON-NLS-1$
+	String SACLIENT_RETRY				= "message.saclient.retry";			//$NON-NLS-1$
+	String IRX_REUSED					= "message.irx.reused";				//$NON-NLS-1$
 	
 	//Errors
 	String IRX_MISSING					= "error.irx.missing";				//$NON-NLS-1$
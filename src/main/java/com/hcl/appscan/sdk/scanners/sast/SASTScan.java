@@ -78,7 +78,7 @@ public class SASTScan extends ASoCScan implements SASTConstants {
 		String targetDir = targetFile.isDirectory() ? targetFile.getAbsolutePath() : targetFile.getParent();
 
 		//Create and run the process
-		new SAClient(getProgress()).run(targetDir, getProperties());
+		SAClientPool.getDefault().run(getProgress(), targetDir, getProperties());
 		String irxDir = getProperties().containsKey(SAVE_LOCATION) ? getProperties().get(SAVE_LOCATION) : targetDir;
 		m_irx = new File(irxDir, getName() + IRX_EXTENSION);
 		if(!m_irx.isFile())
@@ -9,8 +9,17 @@ package com.hcl.appscan.sdk.scanners.sast;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.xml.transform.TransformerException;
 
@@ -20,6 +29,7 @@ import com.hcl.appscan.sdk.error.AppScanException;
 import com.hcl.appscan.sdk.error.InvalidTargetException;
 import com.hcl.appscan.sdk.error.ScannerException;
 import com.hcl.appscan.sdk.logging.IProgress;
+import com.hcl.appscan.sdk.logging.Message;
 import com.hcl.appscan.sdk.scan.IScanManager;
 import com.hcl.appscan.sdk.scan.IScanServiceProvider;
 import com.hcl.appscan.sdk.scan.ITarget;
@@ -28,20 +38,73 @@ import com.hcl.appscan.sdk.scanners.sast.SASTScan;
 import com.hcl.appscan.sdk.scanners.sast.targets.ISASTTarget;
 import com.hcl.appscan.sdk.scanners.sast.xml.ModelWriter;
 import com.hcl.appscan.sdk.scanners.sast.xml.XmlWriter;
+import com.hcl.appscan.sdk.utils.FileCache;
 
 public class SASTScanManager implements IScanManager{
 	
+	private static final String SHARD_DIR = "shard_"; //$NON-NLS-1$
+	private static final String INCREMENTAL_PROPERTY = "SASTIncremental"; //$NON-NLS-1$
+	private static final String CACHE_DIR_PROPERTY = "IRXCacheDir"; //$NON-NLS-1$
+	private static final String CACHE_SIZE_PROPERTY = "IRXCacheSize"; //$NON-NLS-1$
+	private static final long DEFAULT_CACHE_SIZE = 4096;
+	
+	private static FileCache s_irxCache;
+	
 	private List<ISASTTarget> m_targets;
 	private SASTScan m_scan;
+	private List<SASTScan> m_shards;
 	private String m_workingDirectory;
+	private int m_shardCount = ShardPlanner.getDefaultShardCount();
+	private boolean m_incremental = Boolean.getBoolean(INCREMENTAL_PROPERTY);
 
 	public SASTScanManager(String workingDir) {
 		m_workingDirectory = workingDir;
 		m_targets = new ArrayList<ISASTTarget>();
 	}
 
+	/**
+	 * Splits the targets into shards that are prepared by separate SAClient processes at the same time, as many
+	 * at once as the processors and memory of the machine allow. Each shard gets its own configuration and IRX,
+	 * and is submitted as its own scan. The default is set by the "SASTShards" system property.
+	 * 
+	 * @param count The number of shards. 1 prepares all targets together.
+	 */
+	public void setShardCount(int count) {
+		m_shardCount = Math.max(1, count);
+	}
+	
+	/**
+	 * Reuses the IRX generated for targets that have not changed since an earlier scan. The content of each shard
+	 * is fingerprinted, and the SAClient only runs for shards whose fingerprint is not in the IRX cache. Targets
+	 * are then assigned to shards by their path rather than by size, so that a change to one target only
+	 * invalidates the IRX of its own shard. With one shard the IRX is reused only if no target changed.
+	 * <p>
+	 * The default is set by the "SASTIncremental" system property. The cache is in ".appscan/irx-cache" in the
+	 * user's home directory, and can be changed with the "IRXCacheDir" and "IRXCacheSize" (in megabytes) system
+	 * properties.
+	 * 
+	 * @param incremental True to reuse the IRX of unchanged targets.
+	 */
+	public void setIncremental(boolean incremental) {
+		m_incremental = incremental;
+	}
+	
+	/**
+	 * Gets the scans of the shards, after the targets were prepared in shards.
+	 * 
+	 * @return The scan of each shard, or an empty list if the targets were not sharded.
+	 */
+	public List<SASTScan> getShardScans() {
+		return m_shards == null ? Collections.<SASTScan>emptyList() : Collections.unmodifiableList(m_shards);
+	}
+
 	@Override
 	public void prepare(IProgress progress, Map<String, String> properties) throws AppScanException {
+		if(isSharded()) {
+			prepareShards(progress, properties);
+			return;
+		}
+		
 		createConfig();
 		properties.put(CoreConstants.TARGET, m_workingDirectory);
 		properties.put(SASTConstants.PREPARE_ONLY, Boolean.toString(true));
@@ -50,6 +113,13 @@ public class SASTScanManager implements IScanManager{
 
 	@Override
 	public void analyze(IProgress progress, Map<String, String> properties, IScanServiceProvider provider) throws AppScanException {
+		if(isSharded()) {
+			if(m_shards == null)
+				prepareShards(progress, properties);
+			analyzeShards(progress, properties, provider);
+			return;
+		}
+		
 		if(m_scan == null || m_scan.getIrx() == null) {
 			createConfig();
 			properties.put(CoreConstants.TARGET, m_workingDirectory);
@@ -68,6 +138,16 @@ public class SASTScanManager implements IScanManager{
 
 	@Override
 	public void getScanResults(File destination, String format) throws AppScanException {
+		if(m_shards != null) {
+			for(int i = 0; i < m_shards.size(); i++) {
+				SASTScan shard = m_shards.get(i);
+				if(shard.getResultsProvider() == null)
+					throw new AppScanException(Messages.getMessage("message.results.unavailable")); //$NON-NLS-1$
+				shard.getResultsProvider().getResultsFile(m_shards.size() == 1 ? destination : getShardFile(destination, format, i), format);
+			}
+			return;
+		}
+		
 		if(m_scan != null && m_scan.getResultsProvider() != null)
 			m_scan.getResultsProvider().getResultsFile(destination, format);
 		else
@@ -84,15 +164,200 @@ public class SASTScanManager implements IScanManager{
 	}
 
 	private void createConfig() throws AppScanException  {
-		if(m_targets.isEmpty())
+		createConfig(m_targets, new File(m_workingDirectory));
+	}
+	
+	private void createConfig(List<ISASTTarget> targets, File directory) throws AppScanException  {
+		if(targets.isEmpty())
 			return;
 		try {
 			ModelWriter writer = new XmlWriter();
-			writer.initWriters(new File(m_workingDirectory));		
-			writer.visit(m_targets);
+			writer.initWriters(directory);		
+			writer.visit(targets);
 			writer.write();
 		} catch (IOException | TransformerException  e) {
 			throw new AppScanException(e.getLocalizedMessage(), e);
 		}
 	}
+	
+	private boolean isSharded() {
+		if(isIncremental())
+			return !m_targets.isEmpty();
+		return m_shardCount > 1 && m_targets.size() > 1;
+	}
+	
+	private boolean isIncremental() {
+		return m_incremental && getIrxCache() != null;
+	}
+	
+	/**
+	 * Writes a configuration for each shard in its own directory, then generates the IRX of every shard, running
+	 * as many SAClient processes at once as the machine allows.
+	 */
+	private void prepareShards(final IProgress progress, Map<String, String> properties) throws AppScanException {
+		boolean incremental = isIncremental();
+		List<List<ISASTTarget>> shards = incremental ? ShardPlanner.partitionByPath(m_targets, m_shardCount) : ShardPlanner.partition(m_targets, m_shardCount);
+		List<Callable<SASTScan>> jobs = new ArrayList<Callable<SASTScan>>();
+		final List<SASTScan> scans = new ArrayList<SASTScan>(Collections.<SASTScan>nCopies(shards.size(), null));
+		for(int i = 0; i < shards.size(); i++) {
+			final int index = i;
+			File directory = new File(m_workingDirectory, SHARD_DIR + (i + 1));
+			directory.mkdirs();
+			
+			final Map<String, String> shardProperties = shards.size() == 1 ? new HashMap<String, String>(properties) : getShardProperties(properties, i);
+			shardProperties.put(SASTConstants.PREPARE_ONLY, Boolean.toString(true));
+			String key = incremental ? getCacheKey(shards.get(i), shardProperties, progress) : null;
+			if(key != null && reuseIrx(key, directory, shardProperties)) {
+				progress.setStatus(new Message(Message.INFO, Messages.getMessage(SASTConstants.IRX_REUSED, shardProperties.get(CoreConstants.SCAN_NAME))));
+				// Already in the cache.
+				key = null;
+			}
+			else {
+				createConfig(shards.get(i), directory);
+				shardProperties.put(CoreConstants.TARGET, directory.getAbsolutePath());
+			}
+			final String cacheKey = key;
+			
+			jobs.add(new Callable<SASTScan>() {
+				@Override
+				public SASTScan call() throws InvalidTargetException, ScannerException {
+					SASTScan scan = new SASTScan(shardProperties, progress, null);
+					scan.run();
+					if(cacheKey != null)
+						cacheIrx(cacheKey, scan.getIrx());
+					// Each shard sets only its own element, and is read after its future completes.
+					scans.set(index, scan);
+					return scan;
+				}
+			});
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs.size(), Math.min(ShardPlanner.getWorkerCount(), SAClientPool.getDefault().getSize())), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "AppScan IRX shard"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			CompletionService<SASTScan> completion = new ExecutorCompletionService<SASTScan>(executor);
+			for(Callable<SASTScan> job : jobs)
+				completion.submit(job);
+			
+			// Take the shards as they finish, so the first failure stops the others without waiting for the shards
+			// submitted before it.
+			for(int i = 0; i < jobs.size(); i++)
+				completion.take().get();
+			m_shards = scans;
+		} catch (ExecutionException e) {
+			throw new AppScanException(e.getCause().getLocalizedMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AppScanException(e.getLocalizedMessage(), e);
+		} finally {
+			// Stops the remaining shards if one failed.
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Submits the IRX of each shard as its own scan of the same application. Each submitted scan replaces the
+	 * prepared one once it is submitted, so if a submission fails, the shards already submitted are kept and calling
+	 * this again only submits the rest.
+	 */
+	private void analyzeShards(IProgress progress, Map<String, String> properties, IScanServiceProvider provider) throws AppScanException {
+		for(int i = 0; i < m_shards.size(); i++) {
+			if(m_shards.get(i).getScanId() != null)
+				continue;
+			Map<String, String> shardProperties = m_shards.size() == 1 ? new HashMap<String, String>(properties) : getShardProperties(properties, i);
+			shardProperties.remove(SASTConstants.PREPARE_ONLY);
+			shardProperties.put(CoreConstants.TARGET, m_shards.get(i).getIrx().getAbsolutePath());
+			try {
+				SASTScan scan = new SASTScan(shardProperties, progress, provider);
+				scan.run();
+				m_shards.set(i, scan);
+			} catch (InvalidTargetException | ScannerException e) {
+				throw new AppScanException(e.getLocalizedMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the key of the IRX of a shard in the cache, from the fingerprints of its targets, the options that
+	 * change what the SAClient generates and the version of the SAClient that would generate it.
+	 * 
+	 * @return The key, or null if the targets or the SAClient version could not be read.
+	 */
+	private static String getCacheKey(List<ISASTTarget> targets, Map<String, String> properties, IProgress progress) {
+		try {
+			String version = SAClientPool.getDefault().getVersion(progress);
+			if(version == null)
+				return null;
+			StringBuilder key = new StringBuilder();
+			for(String fingerprint : TargetFingerprint.compute(targets))
+				key.append(fingerprint).append('\n');
+			key.append(properties.containsKey(SASTConstants.THIRD_PARTY)).append('\n');
+			key.append(version);
+			return FileCache.hash(key.toString());
+		} catch (IOException | ScannerException e) {
+			// Generate the IRX rather than risk reusing a stale one.
+			return null;
+		}
+	}
+	
+	/**
+	 * Copies a cached IRX to where the SAClient would have generated it, and makes it the target of the shard.
+	 * 
+	 * @return True if the IRX was cached.
+	 */
+	private static boolean reuseIrx(String key, File directory, Map<String, String> properties) {
+		String name = properties.get(CoreConstants.SCAN_NAME);
+		if(name == null)
+			return false;
+		String irxDir = properties.containsKey(SASTConstants.SAVE_LOCATION) ? properties.get(SASTConstants.SAVE_LOCATION) : directory.getAbsolutePath();
+		File irx = new File(irxDir, name + SASTConstants.IRX_EXTENSION);
+		if(!getIrxCache().get(key + SASTConstants.IRX_EXTENSION, irx))
+			return false;
+		properties.put(CoreConstants.TARGET, irx.getAbsolutePath());
+		return true;
+	}
+	
+	private static void cacheIrx(String key, File irx) {
+		if(irx == null || !irx.isFile())
+			return;
+		try {
+			getIrxCache().put(key + SASTConstants.IRX_EXTENSION, irx);
+		} catch (IOException e) {
+			// The IRX is still usable. It is generated again next time.
+		}
+	}
+	
+	private static synchronized FileCache getIrxCache() {
+		if(s_irxCache == null) {
+			long size = Long.getLong(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+			if(size <= 0)
+				return null;
+			String dir = System.getProperty(CACHE_DIR_PROPERTY);
+			File cacheDir = dir != null ? new File(dir) : new File(System.getProperty("user.home"), ".appscan" + File.separator + "irx-cache"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			s_irxCache = new FileCache(cacheDir, size * 1024 * 1024);
+		}
+		return s_irxCache;
+	}
+	
+	private Map<String, String> getShardProperties(Map<String, String> properties, int shard) {
+		Map<String, String> shardProperties = new HashMap<String, String>(properties);
+		String name = properties.get(CoreConstants.SCAN_NAME);
+		shardProperties.put(CoreConstants.SCAN_NAME, (name == null ? SHARD_DIR : name + "_") + (shard + 1)); //$NON-NLS-1$
+		return shardProperties;
+	}
+	
+	private static File getShardFile(File destination, String format, int shard) {
+		if(destination.isDirectory())
+			return new File(destination, CoreConstants.DEFAULT_RESULT_NAME + "_" + (shard + 1) + (format == null ? "" : "." + format)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		String name = destination.getName();
+		int dot = name.lastIndexOf('.');
+		String shardName = dot < 0 ? name + "_" + (shard + 1) : name.substring(0, dot) + "_" + (shard + 1) + name.substring(dot); //$NON-NLS-1$ //$NON-NLS-2$
+		return new File(destination.getParentFile(), shardName);
+	}
 }
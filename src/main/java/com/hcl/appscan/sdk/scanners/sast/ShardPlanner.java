@@ -0,0 +1,195 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.scanners.sast;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.hcl.appscan.sdk.scanners.sast.targets.ISASTTarget;
+
+/**
+ * Splits SAST targets into shards that separate SAClient processes can prepare at the same time, and decides how
+ * many processes the machine can run at once.
+ * <p>
+ * Sharding is off by default. The "SASTShards" system property sets the number of shards, or "auto" for one shard
+ * per worker. Each worker is assumed to need the memory set by the "SASTWorkerMemory" system property, in
+ * megabytes, and at most one worker runs for every two processors.
+ */
+final class ShardPlanner {
+
+	private static final String SHARDS_PROPERTY = "SASTShards"; //$NON-NLS-1$
+	private static final String MEMORY_PROPERTY = "SASTWorkerMemory"; //$NON-NLS-1$
+	private static final String AUTO = "auto"; //$NON-NLS-1$
+	private static final long DEFAULT_WORKER_MEMORY = 2048;
+	// Leave part of the memory to the system and to this JVM.
+	private static final double USABLE_MEMORY = 0.75;
+
+	private ShardPlanner() {
+	}
+
+	/**
+	 * @return The number of shards set by the "SASTShards" system property, or 1 if sharding is off.
+	 */
+	static int getDefaultShardCount() {
+		String shards = System.getProperty(SHARDS_PROPERTY);
+		if(shards == null)
+			return 1;
+		if(AUTO.equalsIgnoreCase(shards.trim()))
+			return getWorkerCount();
+		try {
+			return Math.max(1, Integer.parseInt(shards.trim()));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * @return The number of SAClient processes that can run at once.
+	 */
+	static int getWorkerCount() {
+		int byCores = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		long memory = getPhysicalMemory();
+		if(memory <= 0)
+			return byCores;
+		long perWorker = Long.getLong(MEMORY_PROPERTY, DEFAULT_WORKER_MEMORY) * 1024 * 1024;
+		int byMemory = (int)Math.max(1, (long)(memory * USABLE_MEMORY) / Math.max(1, perWorker));
+		return Math.min(byCores, byMemory);
+	}
+
+	/**
+	 * Splits targets into shards of about the same size on disk. The largest targets are placed first, each in the
+	 * shard that is smallest so far.
+	 *
+	 * @param targets The targets.
+	 * @param count The number of shards.
+	 * @return The non empty shards. There are fewer than requested if there are fewer targets.
+	 */
+	static List<List<ISASTTarget>> partition(List<ISASTTarget> targets, int count) {
+		count = Math.max(1, Math.min(count, targets.size()));
+		final List<ISASTTarget> sorted = new ArrayList<ISASTTarget>(targets);
+		final long[] sizes = new long[sorted.size()];
+		for(int i = 0; i < sizes.length; i++)
+			sizes[i] = getSize(sorted.get(i).getTargetFile());
+
+		List<Integer> order = new ArrayList<Integer>(sorted.size());
+		for(int i = 0; i < sizes.length; i++)
+			order.add(i);
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(sizes[b], sizes[a]);
+			}
+		});
+
+		List<List<ISASTTarget>> shards = new ArrayList<List<ISASTTarget>>(count);
+		long[] totals = new long[count];
+		for(int i = 0; i < count; i++)
+			shards.add(new ArrayList<ISASTTarget>());
+		for(int index : order) {
+			int smallest = 0;
+			for(int i = 1; i < count; i++) {
+				if(totals[i] < totals[smallest])
+					smallest = i;
+			}
+			shards.get(smallest).add(sorted.get(index));
+			totals[smallest] += sizes[index];
+		}
+		return shards;
+	}
+
+	/**
+	 * Splits targets into shards by their path, so that a target stays in the same shard as long as the number of
+	 * shards does not change, whatever other targets are added or removed. There is one shard per target if there
+	 * are no more targets than shards.
+	 *
+	 * @param targets The targets.
+	 * @param count The number of shards.
+	 * @return The non empty shards, in a stable order.
+	 */
+	static List<List<ISASTTarget>> partitionByPath(List<ISASTTarget> targets, int count) {
+		List<ISASTTarget> sorted = new ArrayList<ISASTTarget>(targets);
+		Collections.sort(sorted, new Comparator<ISASTTarget>() {
+			@Override
+			public int compare(ISASTTarget a, ISASTTarget b) {
+				return getPath(a).compareTo(getPath(b));
+			}
+		});
+
+		List<List<ISASTTarget>> shards = new ArrayList<List<ISASTTarget>>();
+		if(count >= sorted.size()) {
+			for(ISASTTarget target : sorted)
+				shards.add(new ArrayList<ISASTTarget>(Collections.singletonList(target)));
+			return shards;
+		}
+
+		for(int i = 0; i < count; i++)
+			shards.add(new ArrayList<ISASTTarget>());
+		for(ISASTTarget target : sorted)
+			shards.get((getPath(target).hashCode() & Integer.MAX_VALUE) % count).add(target);
+		for(int i = shards.size() - 1; i >= 0; i--) {
+			if(shards.get(i).isEmpty())
+				shards.remove(i);
+		}
+		return shards;
+	}
+
+	private static String getPath(ISASTTarget target) {
+		return target.getTargetFile().getAbsolutePath();
+	}
+
+	private static long getSize(File file) {
+		if(!file.isDirectory())
+			return file.length();
+
+		final long[] size = new long[1];
+		try {
+			Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+					size[0] += attributes.size();
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path path, IOException e) {
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			// Use what was counted.
+		}
+		return size[0];
+	}
+
+	/**
+	 * Gets the physical memory of the machine from the JDK's extended operating system bean, when there is one.
+	 */
+	private static long getPhysicalMemory() {
+		OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+		try {
+			Class<?> type = Class.forName("com.sun.management.OperatingSystemMXBean"); //$NON-NLS-1$
+			if(type.isInstance(bean)) {
+				Method method = type.getMethod("getTotalPhysicalMemorySize"); //$NON-NLS-1$
+				return ((Number)method.invoke(bean)).longValue();
+			}
+		} catch (Exception e) {
+			// Not available on this JRE.
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,223 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.scanners.sast;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.hcl.appscan.sdk.concurrent.AsyncExecutor;
+import com.hcl.appscan.sdk.concurrent.AsyncResult;
+import com.hcl.appscan.sdk.scanners.sast.targets.ISASTTarget;
+import com.hcl.appscan.sdk.utils.FileCache;
+
+/**
+ * Computes a fingerprint of the content of SAST targets, so that the IRX of targets that have not changed can be
+ * reused. The fingerprint covers the path, properties and patterns of a target, and the path and SHA-256 of every
+ * file under the target.
+ * <p>
+ * The inclusion and exclusion patterns are not applied to the files. Any file the SAClient reads must be part of
+ * the fingerprint, or a changed file would reuse a stale IRX, so a change to a file the patterns leave out costs
+ * an unneeded IRX rather than risking missing findings. Symbolic links are followed, so that files reached through
+ * them are covered. Files are hashed on the shared {@link AsyncExecutor}, and large files are memory mapped rather
+ * than read through a buffer.
+ */
+final class TargetFingerprint {
+
+	private static final String ALGORITHM = "SHA-256"; //$NON-NLS-1$
+	// Smaller files are cheaper to read than to map.
+	private static final long MAP_THRESHOLD = 64 * 1024;
+	// Limits the address space a single mapping takes.
+	private static final long MAP_WINDOW = 64 * 1024 * 1024;
+	// Small files are hashed in batches of about this many bytes, so that each task does a useful amount of work.
+	private static final long BATCH_BYTES = 16 * 1024 * 1024;
+	private static final int BATCH_FILES = 256;
+
+	private TargetFingerprint() {
+	}
+
+	/**
+	 * Computes the fingerprints of targets, hashing the files of all of them in parallel.
+	 *
+	 * @param targets The targets.
+	 * @return The fingerprint of each target, in hexadecimal, in the order of the targets.
+	 * @throws IOException If a file could not be read.
+	 */
+	static List<String> compute(List<ISASTTarget> targets) throws IOException {
+		List<List<Path>> files = new ArrayList<List<Path>>(targets.size());
+		List<Path> all = new ArrayList<Path>();
+		List<Long> sizes = new ArrayList<Long>();
+		for(ISASTTarget target : targets) {
+			List<Path> selected = select(target, sizes);
+			files.add(selected);
+			all.addAll(selected);
+		}
+
+		byte[][] hashes = hashAll(all, sizes);
+
+		List<String> fingerprints = new ArrayList<String>(targets.size());
+		int next = 0;
+		for(int i = 0; i < targets.size(); i++) {
+			ISASTTarget target = targets.get(i);
+			Path root = target.getTargetFile().toPath();
+			MessageDigest digest = newDigest();
+			update(digest, target.getClass().getName());
+			update(digest, target.getTargetFile().getAbsolutePath());
+			update(digest, Boolean.toString(target.outputsOnly()));
+			for(Map.Entry<String, String> property : new TreeMap<String, String>(target.getProperties()).entrySet()) {
+				update(digest, property.getKey());
+				update(digest, property.getValue());
+			}
+			update(digest, sorted(target.getInclusionPatterns()).toString());
+			update(digest, sorted(target.getExclusionPatterns()).toString());
+			for(Path file : files.get(i)) {
+				update(digest, Files.isDirectory(root) ? root.relativize(file).toString() : file.getFileName().toString());
+				digest.update(hashes[next++]);
+			}
+			fingerprints.add(FileCache.toHex(digest.digest()));
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * Lists every file of a target, in a stable order. A loop of symbolic links fails with an IOException, so the
+	 * target is not fingerprinted at all.
+	 */
+	private static List<Path> select(ISASTTarget target, final List<Long> sizes) throws IOException {
+		final Path root = target.getTargetFile().toPath();
+		final List<Path> files = new ArrayList<Path>();
+		if(!Files.isDirectory(root)) {
+			if(Files.isRegularFile(root)) {
+				files.add(root);
+				sizes.add(Files.size(root));
+			}
+			return files;
+		}
+
+		final TreeMap<String, Path> sorted = new TreeMap<String, Path>();
+		final Map<Path, Long> lengths = new HashMap<Path, Long>();
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if(!attributes.isRegularFile())
+					return FileVisitResult.CONTINUE;
+				// Sorted by the portable form of the path, so the order does not depend on the platform.
+				sorted.put(root.relativize(file).toString().replace(File.separatorChar, '/'), file);
+				lengths.put(file, attributes.size());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		for(Path file : sorted.values()) {
+			files.add(file);
+			sizes.add(lengths.get(file));
+		}
+		return files;
+	}
+
+	/**
+	 * Hashes files in parallel.
+	 */
+	private static byte[][] hashAll(final List<Path> files, List<Long> sizes) throws IOException {
+		final byte[][] hashes = new byte[files.size()][];
+		List<AsyncResult<Void>> tasks = new ArrayList<AsyncResult<Void>>();
+		int start = 0;
+		while(start < files.size()) {
+			int end = start;
+			long bytes = 0;
+			do {
+				bytes += sizes.get(end++);
+			} while(end < files.size() && end - start < BATCH_FILES && bytes + sizes.get(end) <= BATCH_BYTES);
+
+			final int first = start;
+			final int last = end;
+			tasks.add(AsyncExecutor.supply(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for(int i = first; i < last; i++)
+						hashes[i] = hash(files.get(i));
+					return null;
+				}
+			}));
+			start = end;
+		}
+
+		try {
+			AsyncResult.all(tasks).get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof IOException ? (IOException)cause : new IOException(cause.getLocalizedMessage(), cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e.getLocalizedMessage(), e);
+		}
+		return hashes;
+	}
+
+	private static byte[] hash(Path file) throws IOException {
+		MessageDigest digest = newDigest();
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size < MAP_THRESHOLD) {
+				try(InputStream input = Files.newInputStream(file)) {
+					byte[] buffer = new byte[(int)Math.max(1, size)];
+					int read;
+					while((read = input.read(buffer)) > 0)
+						digest.update(buffer, 0, read);
+				}
+			}
+			else {
+				for(long position = 0; position < size; position += MAP_WINDOW) {
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+					digest.update(buffer);
+				}
+			}
+		}
+		return digest.digest();
+	}
+
+	private static List<String> sorted(Iterable<String> values) {
+		List<String> list = new ArrayList<String>();
+		for(String value : values)
+			list.add(value);
+		Collections.sort(list);
+		return list;
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update((value == null ? "" : value).getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+		digest.update((byte)0);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every JRE provides SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A directory of files that are expensive to produce, kept under names derived from what they were produced from.
+ * <p>
+ * Files are written to a temporary file and moved into place, so a partially written file is never used. Files
+ * are copied out, so a file handed out can be changed or replaced without affecting the cache. The least recently
+ * used files are removed once the cache grows past its size limit.
+ */
+public class FileCache {
+
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+	// Temporary files older than this were left behind by a process that did not finish writing them.
+	private static final long STALE_TEMP = 24 * 60 * 60 * 1000L;
+
+	private final File m_dir;
+	private final long m_maxSize;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dir The directory that holds the files.
+	 * @param maxSize The size limit of the cache, in bytes.
+	 */
+	public FileCache(File dir, long maxSize) {
+		m_dir = dir;
+		m_maxSize = maxSize;
+	}
+
+	/**
+	 * @return The directory that holds the files.
+	 */
+	public File getDirectory() {
+		return m_dir;
+	}
+
+	/**
+	 * Copies a cached file to a destination.
+	 *
+	 * @param name The name of the file in the cache.
+	 * @param destination The file to copy to. An existing file is replaced.
+	 * @return True if the file was cached and has been copied.
+	 */
+	public boolean get(String name, File destination) {
+		File cached = new File(m_dir, name);
+		if(!cached.isFile())
+			return false;
+
+		// The modification time records the last use.
+		cached.setLastModified(System.currentTimeMillis());
+		try {
+			Path parent = destination.getAbsoluteFile().toPath().getParent();
+			if(parent != null)
+				Files.createDirectories(parent);
+			// Replaces the destination rather than writing through it, in case it is linked to another file.
+			Files.copy(cached.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		} catch (IOException e) {
+			// Most likely removed by another process since it was found.
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a temporary file in the cache directory to write a file to, before it is added with
+	 * {@link #put(String, File)}.
+	 *
+	 * @return The temporary file.
+	 * @throws IOException If the file could not be created.
+	 */
+	public File createTempFile() throws IOException {
+		Files.createDirectories(m_dir.toPath());
+		return Files.createTempFile(m_dir.toPath(), "cache", TEMP_SUFFIX).toFile(); //$NON-NLS-1$
+	}
+
+	/**
+	 * Adds a file to the cache. A file created with {@link #createTempFile()} is moved into the cache, and any other
+	 * file is copied.
+	 *
+	 * @param name The name of the file in the cache.
+	 * @param file The file to add.
+	 * @throws IOException If the file could not be added.
+	 */
+	public void put(String name, File file) throws IOException {
+		Path target = new File(m_dir, name).toPath();
+		Path source = file.toPath();
+		Files.createDirectories(m_dir.toPath());
+
+		if(!m_dir.toPath().toAbsolutePath().equals(source.toAbsolutePath().getParent())) {
+			Path temp = createTempFile().toPath();
+			Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+			source = temp;
+		}
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		trim();
+	}
+
+	/**
+	 * Removes the least recently used files until the cache is within its size limit.
+	 */
+	public synchronized void trim() {
+		File[] files = m_dir.listFiles();
+		if(files == null)
+			return;
+
+		long now = System.currentTimeMillis();
+		long total = 0;
+		List<File> cached = new ArrayList<File>();
+		for(File file : files) {
+			if(!file.isFile())
+				continue;
+			// Includes the partial download files next to a temporary file.
+			if(file.getName().contains(TEMP_SUFFIX)) {
+				if(now - file.lastModified() > STALE_TEMP)
+					file.delete();
+				continue;
+			}
+			total += file.length();
+			cached.add(file);
+		}
+		if(total <= m_maxSize)
+			return;
+
+		final List<Long> used = new ArrayList<Long>(cached.size());
+		for(File file : cached)
+			used.add(file.lastModified());
+		List<Integer> order = new ArrayList<Integer>(cached.size());
+		for(int i = 0; i < cached.size(); i++)
+			order.add(i);
+		// Read each modification time once, since it can change while sorting.
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(used.get(a), used.get(b));
+			}
+		});
+
+		for(int i = 0; i < order.size() && total > m_maxSize; i++) {
+			File file = cached.get(order.get(i));
+			long length = file.length();
+			if(file.delete())
+				total -= length;
+		}
+	}
+
+	/**
+	 * Removes all cached files.
+	 */
+	public synchronized void clear() {
+		File[] files = m_dir.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				if(file.isFile())
+					file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Hashes a key into a name that is safe to use for a file.
+	 *
+	 * @param key The key.
+	 * @return The SHA-256 of the key, in hexadecimal.
+	 */
+	public static String hash(String key) {
+		try {
+			return toHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8))); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			// Every JRE provides SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param bytes The bytes to convert.
+	 * @return The bytes in lower case hexadecimal.
+	 */
+	public static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes)
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return hex.toString();
+	}
+}
@@ -25,24 +25,33 @@ import com.hcl.appscan.sdk.http.HttpResponse;
 public class ServiceUtil implements CoreConstants {
 	
 	/**
-	 * Gets the SAClientUtil package used for running static analysis.
+	 * Gets the SAClientUtil package used for running static analysis. If a previous download was interrupted,
+	 * it is resumed.
 	 * 
 	 * @param destination The file to save the package to.
 	 * @throws IOException
 	 */
 	public static void getSAClientUtil(File destination) throws IOException {
+		getSAClientUtil(destination, HttpClient.getDefault());
+	}
+	
+	/**
+	 * Gets the SAClientUtil package used for running static analysis. If a previous download was interrupted,
+	 * it is resumed.
+	 * 
+	 * @param destination The file to save the package to.
+	 * @param client The {@link HttpClient} used for the download.
+	 * @throws IOException
+	 */
+	public static void getSAClientUtil(File destination, HttpClient client) throws IOException {
 		String request_url = SystemUtil.getDefaultServer() + String.format(API_SACLIENT_DOWNLOAD, API_SCX, SystemUtil.getOS());
 		
-		HttpClient client = new HttpClient();
-		HttpResponse response = client.get(request_url, null, null);
+		if(!destination.getParentFile().isDirectory())
+			destination.getParentFile().mkdirs();
 		
-		if (response.getResponseCode() == HttpsURLConnection.HTTP_OK || response.getResponseCode() == HttpsURLConnection.HTTP_CREATED) {
-			if(!destination.getParentFile().isDirectory())
-				destination.getParentFile().mkdirs();
-			
-			response.getResponseBodyAsFile(destination);
-		}
-		else
+		HttpResponse response = client.download(request_url, null, destination);
+		
+		if (!response.isSuccess())
 			throw new IOException(response.getResponseBodyAsString());
 	}
 	
@@ -53,9 +62,19 @@ public class ServiceUtil implements CoreConstants {
 	 * @throws IOException
 	 */
 	public static String getSAClientVersion() throws IOException {
-		String request_url = SystemUtil.getDefaultServer() + String.format(API_SACLIENT_VERSION, API_SCX, SystemUtil.getOS(), "true"); //$NON-NLS-1$
+		return getSAClientVersion(HttpClient.getDefault());
+	}
+	
+	/**
+	 * Gets the latest available version of the SAClientUtil package used for running static analysis.
+	 * 
+	 * @param client The {@link HttpClient} used for the request.
+	 * @return The current version of the package.
+	 * @throws IOException
+	 */
+	public static String getSAClientVersion(HttpClient client) throws IOException {
+		String request_url = getSAClientVersionUrl();
 		
-		HttpClient client = new HttpClient();
 		HttpResponse response = client.get(request_url, null, null);
 		
 		if (response.getResponseCode() == HttpsURLConnection.HTTP_OK || response.getResponseCode() == HttpsURLConnection.HTTP_CREATED) {
@@ -71,4 +90,13 @@ public class ServiceUtil implements CoreConstants {
 		}
 		return null;
 	}
+	
+	/**
+	 * Gets the url that provides the latest available version of the SAClientUtil package.
+	 * 
+	 * @return The url.
+	 */
+	public static String getSAClientVersionUrl() {
+		return SystemUtil.getDefaultServer() + String.format(API_SACLIENT_VERSION, API_SCX, SystemUtil.getOS(), "true"); //$NON-NLS-1$
+	}
 }
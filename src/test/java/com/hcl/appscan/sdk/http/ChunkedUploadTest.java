@@ -0,0 +1,205 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link ChunkedUpload} against a local server that reassembles the ranges it receives.
+ */
+public class ChunkedUploadTest {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int CHUNKS = 10;
+	private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)"); //$NON-NLS-1$
+
+	@Rule
+	public TemporaryFolder m_folder = new TemporaryFolder();
+
+	private HttpServer m_server;
+	private String m_url;
+	private File m_file;
+	private byte[] m_content;
+
+	// The state of the stand-in, guarded by this test.
+	private byte[] m_received;
+	private BitSet m_receivedChunks = new BitSet();
+	private Map<Integer, Integer> m_sends = new HashMap<Integer, Integer>();
+	private Map<Integer, Integer> m_failures = new HashMap<Integer, Integer>();
+	private int m_failureStatus = 503;
+
+	@Before
+	public void setUp() throws IOException {
+		m_content = new byte[CHUNK_SIZE * CHUNKS - 1000];
+		new Random(1).nextBytes(m_content);
+		m_file = m_folder.newFile("scan.irx"); //$NON-NLS-1$
+		Files.write(m_file.toPath(), m_content);
+
+		m_server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0); //$NON-NLS-1$
+		m_server.createContext("/upload", new HttpHandler() { //$NON-NLS-1$
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				receive(exchange);
+			}
+		});
+		m_server.start();
+		m_url = "http://127.0.0.1:" + m_server.getAddress().getPort() + "/upload"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@After
+	public void tearDown() {
+		m_server.stop(0);
+	}
+
+	@Test
+	public void reassemblesRanges() throws IOException {
+		HttpResponse response = new ChunkedUpload(new HttpClient(), CHUNK_SIZE, 4).upload(m_url, null, m_file);
+
+		assertEquals(201, response.getResponseCode());
+		assertEquals("done", response.getResponseBodyAsString()); //$NON-NLS-1$
+		assertArrayEquals(m_content, m_received);
+		for(int i = 0; i < CHUNKS; i++)
+			assertEquals(1, getSends(i));
+		assertFalse(new File(m_file.getPath() + ".upload").exists()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void retriesOnlyFailedRange() throws IOException {
+		failRange(3, 2);
+		HttpClient client = new HttpClient();
+		client.setRetryPolicy(new RetryPolicy(3, 0, 0));
+		new ChunkedUpload(client, CHUNK_SIZE, 4).upload(m_url, null, m_file);
+
+		assertArrayEquals(m_content, m_received);
+		for(int i = 0; i < CHUNKS; i++)
+			assertEquals(i == 3 ? 3 : 1, getSends(i));
+	}
+
+	@Test
+	public void sendsRangeNoMoreThanRetryPolicyAllows() throws IOException {
+		failRange(5, 100);
+		HttpClient client = new HttpClient();
+		client.setRetryPolicy(new RetryPolicy(3, 0, 0));
+		try {
+			new ChunkedUpload(client, CHUNK_SIZE, 4).upload(m_url, null, m_file);
+			fail("The upload should have failed"); //$NON-NLS-1$
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertEquals(3, getSends(5));
+	}
+
+	@Test
+	public void resumesFromJournal() throws IOException {
+		failRange(7, 1);
+		setFailureStatus(400);
+		HttpClient client = new HttpClient();
+		client.setRetryPolicy(new RetryPolicy(3, 0, 0));
+		try {
+			new ChunkedUpload(client, CHUNK_SIZE, 4).upload(m_url, null, m_file);
+			fail("The upload should have failed"); //$NON-NLS-1$
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertTrue(new File(m_file.getPath() + ".upload").exists()); //$NON-NLS-1$
+
+		new ChunkedUpload(client, CHUNK_SIZE, 4).upload(m_url, null, m_file);
+		assertArrayEquals(m_content, m_received);
+		for(int i = 0; i < CHUNKS; i++)
+			assertEquals(i == 7 ? 2 : 1, getSends(i));
+	}
+
+	private synchronized void failRange(int chunk, int times) {
+		m_failures.put(chunk, times);
+	}
+
+	private synchronized void setFailureStatus(int status) {
+		m_failureStatus = status;
+	}
+
+	private synchronized int getSends(int chunk) {
+		Integer sends = m_sends.get(chunk);
+		return sends == null ? 0 : sends;
+	}
+
+	private void receive(HttpExchange exchange) throws IOException {
+		Matcher range = CONTENT_RANGE.matcher(exchange.getRequestHeaders().getFirst("Content-Range")); //$NON-NLS-1$
+		assertTrue(range.matches());
+		int first = Integer.parseInt(range.group(1));
+		int last = Integer.parseInt(range.group(2));
+		int total = Integer.parseInt(range.group(3));
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		InputStream in = exchange.getRequestBody();
+		byte[] buffer = new byte[8192];
+		int count;
+		while((count = in.read(buffer)) > 0)
+			body.write(buffer, 0, count);
+
+		int status;
+		byte[] reply = new byte[0];
+		synchronized (this) {
+			int chunk = first / CHUNK_SIZE;
+			m_sends.put(chunk, getSends(chunk) + 1);
+			Integer failures = m_failures.get(chunk);
+			if(failures != null && failures > 0) {
+				m_failures.put(chunk, failures - 1);
+				status = m_failureStatus;
+			} else {
+				assertEquals(last - first + 1, body.size());
+				if(m_received == null)
+					m_received = new byte[total];
+				System.arraycopy(body.toByteArray(), 0, m_received, first, body.size());
+				m_receivedChunks.set(chunk);
+				if(m_receivedChunks.cardinality() == (total + CHUNK_SIZE - 1) / CHUNK_SIZE) {
+					status = 201;
+					reply = "done".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+				} else {
+					status = 308;
+				}
+			}
+		}
+
+		if(reply.length == 0) {
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+			return;
+		}
+		exchange.sendResponseHeaders(status, reply.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(reply);
+		out.close();
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link HttpClient#download(String, java.util.Map, File)} against a local server that supports range
+ * requests and can break off a transfer part way.
+ */
+public class DownloadTest {
+
+	private static final String ETAG = "\"v1\""; //$NON-NLS-1$
+
+	@Rule
+	public TemporaryFolder m_folder = new TemporaryFolder();
+
+	private HttpServer m_server;
+	private String m_url;
+	private byte[] m_content;
+	private volatile String m_etag = ETAG;
+	// The number of bytes of the next response to send before closing the connection, or -1 to send them all.
+	private volatile int m_breakAfter = -1;
+	private final List<String> m_ranges = new CopyOnWriteArrayList<String>();
+
+	@Before
+	public void setUp() throws IOException {
+		m_content = new byte[1024 * 1024];
+		new Random(1).nextBytes(m_content);
+
+		m_server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0); //$NON-NLS-1$
+		m_server.createContext("/report", new HttpHandler() { //$NON-NLS-1$
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		m_server.start();
+		m_url = "http://127.0.0.1:" + m_server.getAddress().getPort() + "/report"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@After
+	public void tearDown() {
+		m_server.stop(0);
+	}
+
+	@Test
+	public void resumesAfterBrokenTransfer() throws IOException {
+		File destination = new File(m_folder.getRoot(), "report.xml"); //$NON-NLS-1$
+		m_breakAfter = m_content.length / 3;
+
+		HttpClient client = new HttpClient();
+		client.setRetryPolicy(new RetryPolicy(3, 0, 0));
+		HttpResponse response = client.download(m_url, null, destination);
+
+		assertTrue(response.isSuccess());
+		assertArrayEquals(m_content, Files.readAllBytes(destination.toPath()));
+		assertEquals(2, m_ranges.size());
+		assertNull(m_ranges.get(0));
+		assertEquals("bytes=" + m_content.length / 3 + "-", m_ranges.get(1)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertFalse(new File(m_folder.getRoot(), "report.xml.part").exists()); //$NON-NLS-1$
+		assertFalse(new File(m_folder.getRoot(), "report.xml.part.info").exists()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void resumesInLaterCall() throws IOException {
+		File destination = new File(m_folder.getRoot(), "report.xml"); //$NON-NLS-1$
+		m_breakAfter = m_content.length / 2;
+
+		HttpClient client = new HttpClient();
+		client.setRetryPolicy(RetryPolicy.NONE);
+		try {
+			client.download(m_url, null, destination);
+			fail("The transfer should have broken off"); //$NON-NLS-1$
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertFalse(destination.exists());
+
+		client.download(m_url, null, destination);
+		assertArrayEquals(m_content, Files.readAllBytes(destination.toPath()));
+		assertEquals("bytes=" + m_content.length / 2 + "-", m_ranges.get(1)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void restartsWhenContentChanged() throws IOException {
+		File destination = new File(m_folder.getRoot(), "report.xml"); //$NON-NLS-1$
+		m_breakAfter = m_content.length / 2;
+
+		HttpClient client = new HttpClient();
+		client.setRetryPolicy(RetryPolicy.NONE);
+		try {
+			client.download(m_url, null, destination);
+			fail("The transfer should have broken off"); //$NON-NLS-1$
+		} catch (IOException e) {
+			// Expected.
+		}
+
+		m_etag = "\"v2\""; //$NON-NLS-1$
+		m_content[0]++;
+		client.download(m_url, null, destination);
+
+		// The server ignores a range whose If-Range does not match, and sends the whole content.
+		assertArrayEquals(m_content, Files.readAllBytes(destination.toPath()));
+	}
+
+	@Test
+	public void restartsWhenPartFileChanged() throws IOException {
+		File destination = new File(m_folder.getRoot(), "report.xml"); //$NON-NLS-1$
+		m_breakAfter = m_content.length / 2;
+
+		HttpClient client = new HttpClient();
+		client.setRetryPolicy(RetryPolicy.NONE);
+		try {
+			client.download(m_url, null, destination);
+			fail("The transfer should have broken off"); //$NON-NLS-1$
+		} catch (IOException e) {
+			// Expected.
+		}
+
+		// The part file no longer has the length recorded when the transfer broke off.
+		OutputStream out = new FileOutputStream(new File(m_folder.getRoot(), "report.xml.part"), true); //$NON-NLS-1$
+		try {
+			out.write(new byte[100]);
+		} finally {
+			out.close();
+		}
+
+		client.download(m_url, null, destination);
+		assertArrayEquals(m_content, Files.readAllBytes(destination.toPath()));
+		assertNull(m_ranges.get(1));
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		String range = exchange.getRequestHeaders().getFirst("Range"); //$NON-NLS-1$
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range"); //$NON-NLS-1$
+		m_ranges.add(range);
+
+		int start = 0;
+		if(range != null && m_etag.equals(ifRange))
+			start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1)); //$NON-NLS-1$
+
+		exchange.getResponseHeaders().set("ETag", m_etag); //$NON-NLS-1$
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+		if(start > 0)
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (m_content.length - 1) + "/" + m_content.length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		exchange.sendResponseHeaders(start > 0 ? 206 : 200, m_content.length - start);
+
+		int breakAfter = m_breakAfter;
+		m_breakAfter = -1;
+		OutputStream out = exchange.getResponseBody();
+		try {
+			if(breakAfter < 0) {
+				out.write(m_content, start, m_content.length - start);
+			} else {
+				out.write(m_content, start, breakAfter);
+				out.flush();
+				// Drop the connection without sending the rest of the content.
+				exchange.close();
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
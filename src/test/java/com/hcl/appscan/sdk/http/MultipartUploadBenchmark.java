@@ -0,0 +1,158 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares {@link HttpClient#postMultipart(String, java.util.Map, List)} with the upload it replaced, which sent
+ * 1 KB chunks and reported progress after each of them, by posting the same file to a local server that discards
+ * the body.
+ * <p>
+ * Not run as part of the build. Run the main method with the file size in megabytes (default 512) and the number
+ * of rounds (default 3) as arguments.
+ */
+public class MultipartUploadBenchmark {
+
+	private static final int MB = 1024 * 1024;
+
+	public static void main(String[] args) throws Exception {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		File file = File.createTempFile("upload", ".irx"); //$NON-NLS-1$ //$NON-NLS-2$
+		file.deleteOnExit();
+		fill(file, (long)size * MB);
+
+		final AtomicLong received = new AtomicLong();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0); //$NON-NLS-1$
+		server.createContext("/upload", new HttpHandler() { //$NON-NLS-1$
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				byte[] buffer = new byte[64 * 1024];
+				int count;
+				while((count = in.read(buffer)) > 0)
+					received.addAndGet(count);
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload"; //$NON-NLS-1$ //$NON-NLS-2$
+
+		try {
+			for(int round = 1; round <= rounds; round++) {
+				CountingProgress progress = new CountingProgress();
+				long start = System.nanoTime();
+				legacyUpload(url, file, progress);
+				report("1 KB chunks", round, size, start, progress); //$NON-NLS-1$
+
+				progress = new CountingProgress();
+				start = System.nanoTime();
+				List<HttpPart> parts = new ArrayList<HttpPart>();
+				parts.add(new HttpPart("fileToUpload", file, "application/octet-stream")); //$NON-NLS-1$ //$NON-NLS-2$
+				HttpResponse response = new HttpClient(progress).postMultipart(url, new HashMap<String, String>(), parts);
+				if(!response.isSuccess())
+					throw new IOException("Upload failed: " + response.getResponseCode()); //$NON-NLS-1$
+				response.close();
+				report("postMultipart", round, size, start, progress); //$NON-NLS-1$
+			}
+		} finally {
+			server.stop(0);
+			file.delete();
+		}
+	}
+
+	/**
+	 * Sends the file the way the SDK did before, with 1 KB chunks, 1 KB reads and progress after each read.
+	 */
+	private static void legacyUpload(String url, File file, IHttpProgress progress) throws IOException {
+		String boundary = "*****" + System.currentTimeMillis() + "*****"; //$NON-NLS-1$ //$NON-NLS-2$
+		HttpURLConnection conn = (HttpURLConnection)new URL(url).openConnection();
+		conn.setRequestMethod("POST"); //$NON-NLS-1$
+		conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary); //$NON-NLS-1$ //$NON-NLS-2$
+		conn.setChunkedStreamingMode(1024);
+		conn.setDoOutput(true);
+		conn.setUseCaches(false);
+
+		long total = file.length();
+		long sent = 0;
+		OutputStream out = conn.getOutputStream();
+		InputStream in = new FileInputStream(file);
+		try {
+			out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"fileToUpload\"; filename=\"" //$NON-NLS-1$ //$NON-NLS-2$
+					+ file.getName() + "\"\r\n\r\n").getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+			byte[] buffer = new byte[1024];
+			int count;
+			while((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+				sent += count;
+				progress.setProgress((int)((float)sent / total * 100));
+			}
+			out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			in.close();
+			out.close();
+		}
+		if(conn.getResponseCode() != 200)
+			throw new IOException("Upload failed: " + conn.getResponseCode()); //$NON-NLS-1$
+		conn.getInputStream().close();
+	}
+
+	private static void fill(File file, long length) throws IOException {
+		byte[] block = new byte[MB];
+		new Random(1).nextBytes(block);
+		RandomAccessFile out = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+		try {
+			for(long written = 0; written < length; written += block.length)
+				out.write(block, 0, (int)Math.min(block.length, length - written));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void report(String name, int round, int size, long start, CountingProgress progress) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%-14s round %d: %6.0f MB/s, %8d progress callbacks", //$NON-NLS-1$
+				name, round, size / seconds, progress.m_calls));
+	}
+
+	private static final class CountingProgress implements IHttpProgress {
+		long m_calls;
+
+		@Override
+		public void setProgress(int percentage) {
+			m_calls++;
+		}
+
+		@Override
+		public void resetProgress() {
+		}
+
+		@Override
+		public void endProgress() {
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.wink.json4j.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hcl.appscan.sdk.auth.IAuthenticationProvider;
+import com.hcl.appscan.sdk.http.PagedCollection.IElementReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link PagedCollection} against a local server that may return fewer items than requested.
+ */
+public class PagedCollectionTest {
+
+	private static final Pattern RANGE = Pattern.compile("items=(\\d+)-(\\d+)"); //$NON-NLS-1$
+	private static final int SIZE = 2000;
+
+	private HttpServer m_server;
+	private String m_url;
+
+	// The behavior of the stand-in, guarded by this test.
+	private int m_cap = SIZE;
+	private boolean m_reportTotal = true;
+	private int m_requests;
+
+	@Before
+	public void setUp() throws IOException {
+		m_server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0); //$NON-NLS-1$
+		m_server.createContext("/items", new HttpHandler() { //$NON-NLS-1$
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange);
+			}
+		});
+		m_server.start();
+		m_url = "http://127.0.0.1:" + m_server.getAddress().getPort() + "/items"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@After
+	public void tearDown() {
+		m_server.stop(0);
+	}
+
+	@Test
+	public void readsEveryPage() {
+		assertEquals(expected(), read(500));
+		assertEquals(4, getRequests());
+	}
+
+	@Test
+	public void continuesAfterCappedPage() {
+		setCap(100);
+		assertEquals(expected(), read(500));
+		assertEquals(20, getRequests());
+	}
+
+	@Test
+	public void readsUntilEmptyPageWithoutTotal() {
+		setCap(300);
+		setReportTotal(false);
+		assertEquals(expected(), read(500));
+		// Seven pages of 300 or less, then the 416 past the end.
+		assertEquals(8, getRequests());
+	}
+
+	@Test
+	public void reportsTotal() throws IOException, JSONException {
+		setCap(100);
+		assertEquals(SIZE, newCollection(500).getTotal());
+	}
+
+	private List<Integer> read(int pageSize) {
+		List<Integer> items = new ArrayList<Integer>();
+		for(Integer item : newCollection(pageSize))
+			items.add(item);
+		return items;
+	}
+
+	private PagedCollection<Integer> newCollection(int pageSize) {
+		return new PagedCollection<Integer>(new HttpClient(), new NoAuthentication(), m_url, pageSize, new IElementReader<Integer>() {
+			@Override
+			public Integer read(JSONReader reader) throws IOException, JSONException {
+				return reader.nextInt();
+			}
+		});
+	}
+
+	private static List<Integer> expected() {
+		List<Integer> items = new ArrayList<Integer>(SIZE);
+		for(int i = 0; i < SIZE; i++)
+			items.add(i);
+		return items;
+	}
+
+	private synchronized void setCap(int cap) {
+		m_cap = cap;
+	}
+
+	private synchronized void setReportTotal(boolean reportTotal) {
+		m_reportTotal = reportTotal;
+	}
+
+	private synchronized int getRequests() {
+		return m_requests;
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		Matcher range = RANGE.matcher(exchange.getRequestHeaders().getFirst("range")); //$NON-NLS-1$
+		if(!range.matches())
+			throw new IOException("Bad range"); //$NON-NLS-1$
+		int first = Integer.parseInt(range.group(1));
+		int last = Integer.parseInt(range.group(2));
+
+		String contentRange;
+		synchronized (this) {
+			m_requests++;
+			if(first >= SIZE) {
+				exchange.sendResponseHeaders(416, -1);
+				exchange.close();
+				return;
+			}
+			last = Math.min(Math.min(last, first + m_cap - 1), SIZE - 1);
+			contentRange = "items " + first + "-" + last + "/" + (m_reportTotal ? Integer.toString(SIZE) : "*"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+
+		StringBuilder body = new StringBuilder("["); //$NON-NLS-1$
+		for(int i = first; i <= last; i++)
+			body.append(i == first ? "" : ",").append(i); //$NON-NLS-1$ //$NON-NLS-2$
+		byte[] reply = body.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().add("Content-Range", contentRange); //$NON-NLS-1$
+		exchange.getResponseHeaders().add("Content-Type", "application/json"); //$NON-NLS-1$ //$NON-NLS-2$
+		exchange.sendResponseHeaders(206, reply.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(reply);
+		out.close();
+	}
+
+	private static class NoAuthentication implements IAuthenticationProvider {
+		@Override
+		public boolean isTokenExpired() {
+			return false;
+		}
+
+		@Override
+		public Map<String, String> getAuthorizationHeader(boolean persist) {
+			return new HashMap<String, String>();
+		}
+
+		@Override
+		public String getServer() {
+			return null;
+		}
+
+		@Override
+		public void saveConnection(String connection) {
+		}
+	}
+}
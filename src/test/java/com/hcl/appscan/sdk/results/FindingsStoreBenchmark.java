@@ -0,0 +1,221 @@
+/**
+ * © Copyright HCL Technologies Ltd. 2017.
+ * LICENSE: Apache License, Version 2.0 https://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package com.hcl.appscan.sdk.results;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.wink.json4j.JSONException;
+import org.apache.wink.json4j.JSONObject;
+
+import com.hcl.appscan.sdk.results.FindingsStore.Field;
+
+/**
+ * Measures the heap used by a {@link FindingsStore} holding a large synthetic result, and the time taken to
+ * filter and group it, against the same findings held as a {@code List<JSONObject>} and queried by scanning it.
+ * <p>
+ * Not run as part of the build. Run the main method with the number of findings (default 2000000), the number of
+ * distinct files (default 20000) and which representations to measure ("store", "json" or "both", the default).
+ * The two are measured one after the other, and the list of objects needs several times the heap of the store.
+ */
+public class FindingsStoreBenchmark {
+
+	private static final String[] SEVERITIES = {"High", "Medium", "Low", "Informational"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final String[] STATUSES = {"Open", "InProgress", "Fixed"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	private static final int ISSUE_TYPES = 250;
+	private static final int APIS = 2000;
+	private static final int LOCATIONS_PER_FILE = 5;
+	private static final int ROUNDS = 5;
+
+	private static final String HIGH = "High"; //$NON-NLS-1$
+	private static final String MEDIUM = "Medium"; //$NON-NLS-1$
+	private static final String[] FIELDS = {"Id", "IssueType", "Severity", "Status", "Location", "SourceFile", "Line", "Api", "Source", "Sink"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+
+	public static void main(String[] args) throws JSONException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int files = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		String mode = args.length > 2 ? args[2] : "both"; //$NON-NLS-1$
+
+		if(!"json".equals(mode)) //$NON-NLS-1$
+			measureStore(count, files);
+		if(!"store".equals(mode)) //$NON-NLS-1$
+			measureList(count, files);
+	}
+
+	private static void measureStore(int count, int files) {
+		long before = usedHeap();
+		long start = System.nanoTime();
+		FindingsStore store = new FindingsStore();
+		store.addAll(generate(count, files));
+		store.trimToSize();
+		long loadMillis = (System.nanoTime() - start) / 1000000;
+		long heap = usedHeap() - before;
+		System.out.println(String.format("FindingsStore: loaded %d findings in %d files in %d ms, using %d MB of heap (%d bytes per finding)", //$NON-NLS-1$
+				store.size(), files, loadMillis, heap / (1024 * 1024), heap / Math.max(1, store.size())));
+
+		for(int round = 1; round <= ROUNDS; round++) {
+			start = System.nanoTime();
+			BitSet rows = store.withSeverity(HIGH);
+			rows.and(store.withIssueType(issueType(7)));
+			int highOfType = rows.cardinality();
+			long filter = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			BitSet inFile = store.inFile(file(files / 2));
+			inFile.and(store.withSeverity(MEDIUM));
+			int mediumInFile = inFile.cardinality();
+			long fileFilter = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Map<String, Integer> bySeverity = store.countBy(Field.SEVERITY, null);
+			long groupAll = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Map<String, Integer> byFile = store.countBy(Field.FILE, store.withSeverity(HIGH));
+			long groupHigh = System.nanoTime() - start;
+
+			print(round, filter, highOfType, fileFilter, mediumInFile, groupAll, bySeverity.size(), groupHigh, byFile.size());
+		}
+	}
+
+	/**
+	 * The same findings and queries, held as the objects a client would get from parsing the issues response.
+	 */
+	private static void measureList(int count, int files) throws JSONException {
+		long before = usedHeap();
+		long start = System.nanoTime();
+		List<JSONObject> list = new ArrayList<JSONObject>();
+		for(Finding finding : generate(count, files))
+			list.add(toJSON(finding));
+		long loadMillis = (System.nanoTime() - start) / 1000000;
+		long heap = usedHeap() - before;
+		System.out.println(String.format("List<JSONObject>: loaded %d findings in %d files in %d ms, using %d MB of heap (%d bytes per finding)", //$NON-NLS-1$
+				list.size(), files, loadMillis, heap / (1024 * 1024), heap / Math.max(1, list.size())));
+
+		String type = issueType(7);
+		String file = file(files / 2);
+		for(int round = 1; round <= ROUNDS; round++) {
+			start = System.nanoTime();
+			int highOfType = 0;
+			for(JSONObject finding : list) {
+				if(HIGH.equals(finding.get(FIELDS[2])) && type.equals(finding.get(FIELDS[1])))
+					highOfType++;
+			}
+			long filter = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int mediumInFile = 0;
+			for(JSONObject finding : list) {
+				if(file.equals(finding.get(FIELDS[5])) && MEDIUM.equals(finding.get(FIELDS[2])))
+					mediumInFile++;
+			}
+			long fileFilter = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Map<String, Integer> bySeverity = new HashMap<String, Integer>();
+			for(JSONObject finding : list)
+				increment(bySeverity, (String)finding.get(FIELDS[2]));
+			long groupAll = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Map<String, Integer> byFile = new HashMap<String, Integer>();
+			for(JSONObject finding : list) {
+				if(HIGH.equals(finding.get(FIELDS[2])))
+					increment(byFile, (String)finding.get(FIELDS[5]));
+			}
+			long groupHigh = System.nanoTime() - start;
+
+			print(round, filter, highOfType, fileFilter, mediumInFile, groupAll, bySeverity.size(), groupHigh, byFile.size());
+		}
+	}
+
+	private static JSONObject toJSON(Finding finding) throws JSONException {
+		JSONObject object = new JSONObject();
+		object.put(FIELDS[0], finding.getId());
+		object.put(FIELDS[1], finding.getIssueType());
+		object.put(FIELDS[2], finding.getSeverity());
+		object.put(FIELDS[3], finding.getStatus());
+		object.put(FIELDS[4], finding.getLocation());
+		object.put(FIELDS[5], finding.getFile());
+		object.put(FIELDS[6], finding.getLine());
+		object.put(FIELDS[7], finding.getApi());
+		object.put(FIELDS[8], finding.getSource());
+		object.put(FIELDS[9], finding.getSink());
+		return object;
+	}
+
+	private static void increment(Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+
+	private static void print(int round, long filter, int highOfType, long fileFilter, int mediumInFile, long groupAll, int severities,
+			long groupHigh, int highFiles) {
+		System.out.println(String.format("Round %d: severity and type %.1f ms (%d rows), file and severity %.1f ms (%d rows), " //$NON-NLS-1$
+				+ "count by severity %.1f ms (%d groups), count high by file %.1f ms (%d groups)", //$NON-NLS-1$
+				round, filter / 1e6, highOfType, fileFilter / 1e6, mediumInFile, groupAll / 1e6, severities, groupHigh / 1e6, highFiles));
+	}
+
+	/**
+	 * Creates the findings as they are iterated, so that only the store holds them.
+	 */
+	private static Iterable<Finding> generate(final int count, final int files) {
+		return new Iterable<Finding>() {
+			@Override
+			public Iterator<Finding> iterator() {
+				final Random random = new Random(1);
+				return new Iterator<Finding>() {
+					private int m_next;
+
+					@Override
+					public boolean hasNext() {
+						return m_next < count;
+					}
+
+					@Override
+					public Finding next() {
+						if(!hasNext())
+							throw new NoSuchElementException();
+						m_next++;
+						int file = random.nextInt(files);
+						String api = random.nextInt(4) == 0 ? null : "com.example.Api.call" + random.nextInt(APIS) + "()"; //$NON-NLS-1$ //$NON-NLS-2$
+						return new Finding(new UUID(random.nextLong(), random.nextLong()).toString(), issueType(random.nextInt(ISSUE_TYPES)),
+								SEVERITIES[random.nextInt(SEVERITIES.length)], STATUSES[random.nextInt(STATUSES.length)],
+								file(file) + ":method" + random.nextInt(LOCATIONS_PER_FILE), file(file), random.nextInt(2000), //$NON-NLS-1$
+								api, api == null ? null : "request.getParameter()", api == null ? null : api); //$NON-NLS-1$
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	private static String issueType(int index) {
+		return "IssueType" + index; //$NON-NLS-1$
+	}
+
+	private static String file(int index) {
+		return "src/main/java/com/example/module" + (index % 100) + "/Source" + index + ".java"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}